@@ -0,0 +1,52 @@
+package com.albumSystem.demo.benchmark;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+//generated fixture images, cached in the temp dir so forks and trials reuse them
+public final class FixtureImages {
+
+    private FixtureImages(){}
+
+    public static Path directory()throws IOException{
+        Path dir=Paths.get(System.getProperty("java.io.tmpdir"),"album-jmh-fixtures");
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    //size is a "<width>x<height>" @Param value, format an ImageIO writer name (jpeg, png)
+    public static Path create(String size,String format)throws IOException{
+        Path file=directory().resolve(size+"."+format);
+        if(Files.exists(file)){
+            return file;
+        }
+        String[] dims=size.split("x");
+        int width=Integer.parseInt(dims[0]);
+        int height=Integer.parseInt(dims[1]);
+
+        //smooth gradients with a little noise, so both codecs compress it roughly like a photo and not like a flat fill
+        BufferedImage img=new BufferedImage(width,height,BufferedImage.TYPE_INT_RGB);
+        Random random=new Random(42);
+        int[] row=new int[width];
+        for(int y=0;y<height;y++){
+            for(int x=0;x<width;x++){
+                int r=(x*255/width+random.nextInt(12))&0xff;
+                int g=(y*255/height+random.nextInt(12))&0xff;
+                int b=((x+y)*255/(width+height)+random.nextInt(12))&0xff;
+                row[x]=(r<<16)|(g<<8)|b;
+            }
+            img.setRGB(0,y,width,1,row,0,width);
+        }
+        Path tmp=Files.createTempFile(directory(),"fixture",".tmp");
+        if(!ImageIO.write(img,format,tmp.toFile())){
+            throw new IOException("No image writer for "+format);
+        }
+        Files.move(tmp,file);
+        return file;
+    }
+}
@@ -0,0 +1,85 @@
+package com.albumSystem.demo.benchmark;
+
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.AppUtils.MappedImageInputStream;
+import org.imgscalr.Scalr;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+//the individual stages of turning an upload into a thumbnail, run with -prof gc to get allocation rates
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ImagePipelineBenchmark {
+
+    @Param({"640x480","1920x1080","6000x4000"})
+    public String size;
+
+    @Param({"jpeg","png"})
+    public String format;
+
+    private Path original;
+    private Path copyTarget;
+    private BufferedImage decoded;
+    private BufferedImage thumbnail;
+
+    @Setup(Level.Trial)
+    public void setUp()throws IOException{
+        original=FixtureImages.create(size,format);
+        copyTarget=Files.createTempFile("album-jmh-copy",".bin");
+        decoded=decode();
+        thumbnail=Scalr.resize(decoded,Scalr.Method.AUTOMATIC,Scalr.Mode.AUTOMATIC,AppUtil.THUMBNAIL_WIDTH,Scalr.OP_ANTIALIAS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()throws IOException{
+        Files.deleteIfExists(copyTarget);
+    }
+
+    @Benchmark
+    public BufferedImage decode()throws IOException{
+        try(ImageInputStream in=new MappedImageInputStream(original)){
+            return ImageIO.read(in);
+        }
+    }
+
+    @Benchmark
+    public BufferedImage resizeAutomatic(){
+        return Scalr.resize(decoded,Scalr.Method.AUTOMATIC,Scalr.Mode.AUTOMATIC,AppUtil.THUMBNAIL_WIDTH,Scalr.OP_ANTIALIAS);
+    }
+
+    @Benchmark
+    public BufferedImage resizeSpeed(){
+        return Scalr.resize(decoded,Scalr.Method.SPEED,Scalr.Mode.AUTOMATIC,AppUtil.THUMBNAIL_WIDTH);
+    }
+
+    @Benchmark
+    public BufferedImage resizeQuality(){
+        return Scalr.resize(decoded,Scalr.Method.QUALITY,Scalr.Mode.AUTOMATIC,AppUtil.THUMBNAIL_WIDTH,Scalr.OP_ANTIALIAS);
+    }
+
+    @Benchmark
+    public byte[] encodeThumbnail()throws IOException{
+        ByteArrayOutputStream out=new ByteArrayOutputStream();
+        ImageIO.write(thumbnail,format,out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public long copyOriginal()throws IOException{
+        Files.copy(original,copyTarget,StandardCopyOption.REPLACE_EXISTING);
+        return Files.size(copyTarget);
+    }
+}
@@ -0,0 +1,109 @@
+package com.albumSystem.demo.benchmark;
+
+import com.albumSystem.demo.AlbumApplication;
+import com.albumSystem.demo.model.Account;
+import com.albumSystem.demo.model.Album;
+import com.albumSystem.demo.service.AccountService;
+import com.albumSystem.demo.service.AlbumService;
+import com.albumSystem.demo.service.PhotoUploadService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//what the upload-photos request thread pays, from the MultipartFile[] to the SUCCESS/ERRORS map, without HTTP.
+//thumbnails are still generated by the background stage, so its CPU use competes with the measurement like it does in production
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PhotoUploadServiceBenchmark {
+
+    @Param({"1","20"})
+    public int files;
+
+    @Param({"1920x1080"})
+    public String size;
+
+    private Path uploadRoot;
+    private ConfigurableApplicationContext context;
+    private PhotoUploadService photoUploadService;
+    private Album album;
+    private MockMultipartFile[] uploads;
+    private byte[][] contents;
+    private long invocation;
+
+    @Setup(Level.Trial)
+    public void setUp()throws IOException{
+        uploadRoot=Files.createTempDirectory("album-jmh-uploads");
+        context=new SpringApplicationBuilder(AlbumApplication.class)
+                .properties("server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:jmh;DB_CLOSE_DELAY=-1",
+                        "logging.file.name=target/jmh-app.log",
+                        "album.storage.local.root="+uploadRoot,
+                        "album.image.decode-wait-ms=60000")
+                .run();
+        photoUploadService=context.getBean(PhotoUploadService.class);
+
+        Account account=context.getBean(AccountService.class).findByEmail("user@user.com").get();
+        Album newAlbum=new Album();
+        newAlbum.setName("benchmark");
+        newAlbum.setDescription("benchmark");
+        newAlbum.setAccount(account);
+        album=context.getBean(AlbumService.class).save(newAlbum);
+
+        byte[] bytes=Files.readAllBytes(FixtureImages.create(size,"jpeg"));
+        uploads=new MockMultipartFile[files];
+        contents=new byte[files][];
+        for(int i=0;i<files;i++){
+            //8 spare bytes after the JPEG end marker, decoders ignore them
+            contents[i]=Arrays.copyOf(bytes,bytes.length+8);
+            uploads[i]=new MockMultipartFile("files","photo"+i+".jpg","image/jpeg",contents[i]);
+        }
+    }
+
+    //storage is content-addressed, so every file of every invocation gets distinct trailing bytes;
+    //otherwise all but the first upload would be measured as deduplicated
+    @Setup(Level.Invocation)
+    public void makeContentUnique(){
+        invocation++;
+        for(int i=0;i<files;i++){
+            ByteBuffer.wrap(contents[i],contents[i].length-8,8).putInt((int) invocation).putInt(i);
+        }
+    }
+
+    @Benchmark
+    public HashMap<String, List<?>> upload(){
+        return photoUploadService.upload(album,uploads);
+    }
+
+    //keeps the temp dir from growing by gigabytes over a run; files still being written by the thumbnail stage are skipped
+    @TearDown(Level.Iteration)
+    public void cleanUploads()throws IOException{
+        try(Stream<Path> paths=Files.walk(uploadRoot)){
+            paths.sorted(Comparator.reverseOrder())
+                    .filter(path -> !path.equals(uploadRoot))
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()throws IOException{
+        context.close();
+        cleanUploads();
+        Files.deleteIfExists(uploadRoot);
+    }
+}
@@ -0,0 +1,78 @@
+package com.albumSystem.demo.benchmark;
+
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.AppUtils.MappedImageInputStream;
+import com.albumSystem.demo.util.constants.ThumbnailEngine;
+import org.imgscalr.Scalr;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+//speed and allocation of the two thumbnail engines; quality is printed once per trial as PSNR against
+//an ULTRA_QUALITY resize of the fully decoded original
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ThumbnailEngineBenchmark {
+
+    @Param({"SCALR","SUBSAMPLED"})
+    public ThumbnailEngine engine;
+
+    @Param({"1920x1080","6000x4000"})
+    public String size;
+
+    @Param({"jpeg","png"})
+    public String format;
+
+    private Path original;
+
+    @Setup(Level.Trial)
+    public void setUp()throws IOException{
+        original=FixtureImages.create(size,format);
+    }
+
+    @TearDown(Level.Trial)
+    public void reportQuality()throws IOException{
+        BufferedImage full;
+        try(ImageInputStream in=new MappedImageInputStream(original)){
+            full=ImageIO.read(in);
+        }
+        BufferedImage reference=Scalr.resize(full,Scalr.Method.ULTRA_QUALITY,Scalr.Mode.AUTOMATIC,AppUtil.THUMBNAIL_WIDTH);
+        System.out.printf("%n%s %s %s PSNR vs reference: %.2f dB%n",engine,size,format,psnr(reference,thumbnail()));
+    }
+
+    @Benchmark
+    public BufferedImage thumbnail()throws IOException{
+        if(engine==ThumbnailEngine.SUBSAMPLED){
+            return AppUtil.getSubsampledThumbnail(original,AppUtil.THUMBNAIL_WIDTH);
+        }
+        return AppUtil.getThumbnail(original,AppUtil.THUMBNAIL_WIDTH);
+    }
+
+    //compared over the common area, the engines may round the short side differently by a pixel
+    static double psnr(BufferedImage a,BufferedImage b){
+        int width=Math.min(a.getWidth(),b.getWidth());
+        int height=Math.min(a.getHeight(),b.getHeight());
+        double squaredError=0;
+        for(int y=0;y<height;y++){
+            for(int x=0;x<width;x++){
+                int p=a.getRGB(x,y);
+                int q=b.getRGB(x,y);
+                for(int shift=0;shift<=16;shift+=8){
+                    int d=((p>>shift)&0xff)-((q>>shift)&0xff);
+                    squaredError+=d*d;
+                }
+            }
+        }
+        double mse=squaredError/(3.0*width*height);
+        return mse==0 ? Double.POSITIVE_INFINITY : 10*Math.log10(255*255/mse);
+    }
+}
@@ -0,0 +1,143 @@
+package com.albumSystem.demo.benchmark;
+
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.AppUtils.MappedImageInputStream;
+import org.imgscalr.Scalr;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+//bytes pulled through user space per stored upload: the old path copied the multipart temp file and then
+//decoded the part's InputStream a second time, the current one moves the temp file and decodes the stored copy
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UploadIoBenchmark {
+
+    @Param({"1920x1080","6000x4000"})
+    public String size;
+
+    @Param({"jpeg"})
+    public String format;
+
+    private Path fixture;
+    private Path workDir;
+    private Path part;
+    private Path stored;
+
+    //reported next to the timing as bytesRead per operation
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class BytesRead {
+        public long bytesRead;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()throws IOException{
+        fixture=FixtureImages.create(size,format);
+        workDir=Files.createTempDirectory("album-jmh-upload");
+    }
+
+    //a fresh "multipart temp file" for every upload, the way the container hands one over
+    @Setup(Level.Invocation)
+    public void newPart()throws IOException{
+        part=workDir.resolve("part.tmp");
+        stored=workDir.resolve("stored."+format);
+        Files.copy(fixture,part,StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(stored);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()throws IOException{
+        Files.deleteIfExists(part);
+        Files.deleteIfExists(stored);
+        Files.deleteIfExists(workDir);
+    }
+
+    @Benchmark
+    public BufferedImage copyThenDecodePart(BytesRead counter)throws IOException{
+        try(InputStream in=new CountingInputStream(Files.newInputStream(part),counter)){
+            Files.copy(in,stored,StandardCopyOption.REPLACE_EXISTING);
+        }
+        BufferedImage img;
+        try(InputStream in=new CountingInputStream(Files.newInputStream(part),counter)){
+            img=ImageIO.read(in);
+        }
+        return Scalr.resize(img,Scalr.Method.AUTOMATIC,Scalr.Mode.AUTOMATIC,AppUtil.THUMBNAIL_WIDTH,Scalr.OP_ANTIALIAS);
+    }
+
+    @Benchmark
+    public BufferedImage moveThenDecodeStored(BytesRead counter)throws IOException{
+        Files.move(part,stored,StandardCopyOption.REPLACE_EXISTING);
+        BufferedImage img;
+        try(CountingMappedImageInputStream in=new CountingMappedImageInputStream(stored,counter)){
+            img=ImageIO.read(in);
+        }
+        return Scalr.resize(img,Scalr.Method.AUTOMATIC,Scalr.Mode.AUTOMATIC,AppUtil.THUMBNAIL_WIDTH,Scalr.OP_ANTIALIAS);
+    }
+
+    static class CountingInputStream extends FilterInputStream {
+        private final BytesRead counter;
+
+        CountingInputStream(InputStream in,BytesRead counter){
+            super(in);
+            this.counter=counter;
+        }
+
+        @Override
+        public int read()throws IOException{
+            int b=super.read();
+            if(b>=0){
+                counter.bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b,int off,int len)throws IOException{
+            int n=super.read(b,off,len);
+            if(n>0){
+                counter.bytesRead+=n;
+            }
+            return n;
+        }
+    }
+
+    static class CountingMappedImageInputStream extends MappedImageInputStream {
+        private final BytesRead counter;
+
+        CountingMappedImageInputStream(Path path,BytesRead counter)throws IOException{
+            super(path);
+            this.counter=counter;
+        }
+
+        @Override
+        public int read()throws IOException{
+            int b=super.read();
+            if(b>=0){
+                counter.bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b,int off,int len)throws IOException{
+            int n=super.read(b,off,len);
+            if(n>0){
+                counter.bytesRead+=n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.albumSystem.demo.Config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableScheduling
+public class AsyncConfig {
+
+    @Value("${album.thumbnail.worker-threads:2}")
+    private int thumbnailWorkerThreads;
+
+    @Value("${album.thumbnail.queue-capacity:500}")
+    private int thumbnailQueueCapacity;
+
+    @Value("${album.upload.threads:4}")
+    private int uploadThreads;
+
+    @Value("${album.download.max-concurrent:4}")
+    private int maxConcurrentDownloads;
+
+    //background stage that decodes originals and writes thumbnails after the upload request has returned.
+    //when the queue is full the task is rejected rather than run on the upload thread; the blob stays PENDING and
+    //ThumbnailService queues it again later
+    @Bean(name = "thumbnailExecutor")
+    public ThreadPoolTaskExecutor thumbnailExecutor(){
+        ThreadPoolTaskExecutor executor=new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(thumbnailWorkerThreads);
+        executor.setMaxPoolSize(thumbnailWorkerThreads);
+        executor.setQueueCapacity(thumbnailQueueCapacity);
+        executor.setThreadNamePrefix("thumbnail-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+
+    //stores the files of one multi-file upload concurrently; size-capped and shared by all upload requests
+    @Bean(name = "uploadExecutor")
+    public ThreadPoolTaskExecutor uploadExecutor(){
+        ThreadPoolTaskExecutor executor=new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(uploadThreads);
+        executor.setMaxPoolSize(uploadThreads);
+        executor.setQueueCapacity(uploadThreads*50);
+        executor.setThreadNamePrefix("upload-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    //runs StreamingResponseBody handlers (album ZIP exports) off the servlet threads, one thread per running export;
+    //AlbumExportService admits no more exports than there are threads, so nothing waits in the queue for long
+    @Bean(name = "asyncRequestExecutor")
+    public ThreadPoolTaskExecutor asyncRequestExecutor(){
+        ThreadPoolTaskExecutor executor=new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrentDownloads);
+        executor.setMaxPoolSize(maxConcurrentDownloads);
+        executor.setQueueCapacity(maxConcurrentDownloads);
+        executor.setThreadNamePrefix("download-");
+        executor.initialize();
+        return executor;
+    }
+
+    //delayed file-system housekeeping (removing deleted albums, retries, migration, session expiry); never on the request path.
+    //primary, so @Scheduled methods run here rather than on the reconciler's scheduler
+    @Primary
+    @Bean(name = "storageScheduler")
+    public ThreadPoolTaskScheduler storageScheduler(){
+        ThreadPoolTaskScheduler scheduler=new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("storage-");
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    //the storage reconciler alone: its walk is throttled by sleeping and can take minutes, which must not hold a thread
+    //the housekeeping above is waiting for
+    @Bean(name = "reconcileScheduler")
+    public ThreadPoolTaskScheduler reconcileScheduler(){
+        ThreadPoolTaskScheduler scheduler=new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("reconcile-");
+        scheduler.initialize();
+        return scheduler;
+    }
+}
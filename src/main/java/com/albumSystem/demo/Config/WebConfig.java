@@ -0,0 +1,39 @@
+package com.albumSystem.demo.Config;
+
+import com.albumSystem.demo.Security.CurrentAccountArgumentResolver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private CurrentAccountArgumentResolver currentAccountArgumentResolver;
+
+    @Autowired
+    @Qualifier("asyncRequestExecutor")
+    private ThreadPoolTaskExecutor asyncRequestExecutor;
+
+    //a whole album can take a while to stream
+    @Value("${album.download.timeout-ms:3600000}")
+    private long asyncTimeoutMs;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(asyncRequestExecutor);
+        configurer.setDefaultTimeout(asyncTimeoutMs);
+    }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(currentAccountArgumentResolver);
+    }
+}
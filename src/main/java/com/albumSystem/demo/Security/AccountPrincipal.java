@@ -0,0 +1,5 @@
+package com.albumSystem.demo.Security;
+
+//what a controller needs to know about the caller; resolved from the token and the account cache, never from the request body
+public record AccountPrincipal(long id,String email,String authorities) {
+}
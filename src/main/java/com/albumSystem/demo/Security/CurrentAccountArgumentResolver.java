@@ -0,0 +1,62 @@
+package com.albumSystem.demo.Security;
+
+import com.albumSystem.demo.service.AccountService;
+import com.albumSystem.demo.service.TokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.server.ResponseStatusException;
+
+//turns the bearer token into an AccountPrincipal. Tokens carry the account id, so the lookup is a cache hit in
+//AccountService instead of a findByEmail per request; tokens issued before the claim existed fall back to the email subject
+@Component
+public class CurrentAccountArgumentResolver implements HandlerMethodArgumentResolver {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(CurrentAccount.class)
+                && AccountPrincipal.class.isAssignableFrom(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Authentication authentication=SecurityContextHolder.getContext().getAuthentication();
+        if(authentication==null){
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+        AccountPrincipal principal=null;
+        if(authentication instanceof JwtAuthenticationToken jwtAuthentication){
+            Jwt jwt=jwtAuthentication.getToken();
+            Object account_id=jwt.getClaim(TokenService.ACCOUNT_ID_CLAIM);
+            if(account_id instanceof Number id){
+                principal=accountService.findPrincipalById(id.longValue());
+                //an id from another account would mean the token is stale, treat it like a deleted account
+                if(principal!=null && !principal.email().equals(jwt.getSubject())){
+                    principal=null;
+                }
+            }else{
+                principal=accountService.findPrincipalByEmail(jwt.getSubject());
+            }
+        }else{
+            principal=accountService.findPrincipalByEmail(authentication.getName());
+        }
+        if(principal==null){
+            //the account was deleted after the token was issued
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+        return principal;
+    }
+}
@@ -87,7 +87,7 @@ public class SecurityConfig {
                 .headers((headers)->headers.frameOptions((frameOptions)->frameOptions.disable()))
                 .authorizeHttpRequests(authorize ->authorize
                         .dispatcherTypeMatchers(FORWARD, ERROR).permitAll()
-                        .requestMatchers("/api/v1/albums/add","/api/v1/albums","/api/v1/albums/{album_id}/photos","/api/v1/albums/{album_id}/photos/{photo_id}/download-photo","/api/v1/albums/{album_id}/photos/{photo_id}/download-thumbnail").authenticated()
+                        .requestMatchers("/api/v1/albums/add","/api/v1/albums","/api/v1/albums/{album_id}","/api/v1/albums/{album_id}/photos","/api/v1/albums/{album_id}/update","/api/v1/albums/{album_id}/delete","/api/v1/albums/{album_id}/photos/{photo_id}/update","/api/v1/albums/{album_id}/photos/{photo_id}/delete","/api/v1/albums/{album_id}/upload-photos","/api/v1/albums/{album_id}/photos/{photo_id}/download-photo","/api/v1/albums/{album_id}/photos/{photo_id}/download-thumbnail","/api/v1/albums/{album_id}/upload-sessions","/api/v1/albums/{album_id}/upload-sessions/**","/api/v1/albums/{album_id}/contact-sheet","/api/v1/albums/{album_id}/contact-sheet/map","/api/v1/albums/{album_id}/download","/api/v1/albums/{album_id}/thumbnails:batch").authenticated()
                         .requestMatchers("/api/v1/auth/token","/auth/users/add", "/swagger-ui/**", "/v3/api-docs/**","/db-console/**").permitAll()
                         .requestMatchers("/api/v1/auth/users").hasAnyAuthority("SCOPE_ADMIN")
                         .requestMatchers("/test/**").authenticated()
@@ -95,6 +95,7 @@ public class SecurityConfig {
                         .requestMatchers("/api/v1/auth/profile/update-password").authenticated()
                         .requestMatchers("/api/v1/auth/profile/delete").authenticated()
                         .requestMatchers("/api/v1/auth/users/{user_id}/update-authorities/**").hasAuthority("SCOPE_ADMIN")
+                        .requestMatchers("/actuator/**").hasAuthority("SCOPE_ADMIN")
                         .anyRequest().denyAll())
                   //this means the request need to be authenticated
 
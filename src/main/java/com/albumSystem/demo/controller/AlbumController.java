@@ -1,39 +1,51 @@
 package com.albumSystem.demo.controller;
 
 
-import com.albumSystem.demo.model.Account;
+import com.albumSystem.demo.Security.AccountPrincipal;
+import com.albumSystem.demo.Security.CurrentAccount;
+import com.albumSystem.demo.exception.DecodeBudgetExceededException;
+import com.albumSystem.demo.model.ContactSheet;
 import com.albumSystem.demo.model.Photo;
+import com.albumSystem.demo.model.UploadSession;
 import com.albumSystem.demo.payload.album.*;
+import com.albumSystem.demo.service.AlbumExportService;
+import com.albumSystem.demo.service.ContactSheetService;
+import com.albumSystem.demo.service.FileDownloadService;
+import com.albumSystem.demo.service.LegacyLayoutMigrator;
 import com.albumSystem.demo.service.PhotoService;
+import com.albumSystem.demo.service.PhotoUploadService;
+import com.albumSystem.demo.service.RenditionService;
+import com.albumSystem.demo.service.StorageCleaner;
+import com.albumSystem.demo.service.ThumbnailBatchService;
+import com.albumSystem.demo.service.ThumbnailCache;
+import com.albumSystem.demo.service.UploadSessionService;
+import com.albumSystem.demo.storage.PhotoStorage;
 import com.albumSystem.demo.util.AppUtils.AppUtil;
 import com.albumSystem.demo.model.Album;
 import com.albumSystem.demo.service.AccountService;
 import com.albumSystem.demo.service.AlbumService;
 import com.albumSystem.demo.util.constants.AlbumError;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
 import org.springframework.http.*;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.imageio.ImageIO;
 import javax.validation.Valid;
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.NoSuchFileException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/v1")
@@ -41,10 +53,6 @@ import java.util.*;
 @Slf4j
 public class AlbumController {
 
-    static final String PHOTOS_FOLDER_NAME="photos";
-    static final String THUMBNAIL_FOLDER_NAME="thumbnails";
-    static final int   THUMBNAIL_WIDTH=300;
-
     @Autowired
     private AccountService accountService;
 
@@ -54,23 +62,50 @@ public class AlbumController {
     @Autowired
     private PhotoService photoService;
 
+    @Autowired
+    private PhotoUploadService photoUploadService;
+
+    @Autowired
+    private FileDownloadService fileDownloadService;
+
+    @Autowired
+    private ThumbnailCache thumbnailCache;
+
+    @Autowired
+    private StorageCleaner storageCleaner;
+
+    @Autowired
+    private LegacyLayoutMigrator legacyLayoutMigrator;
+
+    @Autowired
+    private UploadSessionService uploadSessionService;
+
+    @Autowired
+    private RenditionService renditionService;
+
+    @Autowired
+    private ContactSheetService contactSheetService;
+
+    @Autowired
+    private AlbumExportService albumExportService;
+
+    @Autowired
+    private ThumbnailBatchService thumbnailBatchService;
+
     @PostMapping(value = "/albums/add",consumes = "application/json",produces = "application/json")
     @ResponseStatus(HttpStatus.CREATED)
     @ApiResponse(responseCode = "400",description = "Please add valid name a description")
     @ApiResponse(responseCode = "201",description = "Account added")
     @Operation(summary = "Add an Album api")
     @SecurityRequirement(name="album-system-api")
-    public ResponseEntity<AlbumViewDTO> addAlbum(@Valid @RequestBody AlbumPayloadDTO albumPayloadDTO, Authentication authentication){
+    public ResponseEntity<AlbumViewDTO> addAlbum(@Valid @RequestBody AlbumPayloadDTO albumPayloadDTO, @CurrentAccount AccountPrincipal account){
         try{
             Album album=new Album();
             album.setName(albumPayloadDTO.getName());
             album.setDescription(albumPayloadDTO.getDescription());
-            String email= authentication.getName();
-            Optional<Account> accountOptional= accountService.findByEmail(email);
-            Account account=accountOptional.get();
-            album.setAccount(account);
+            album.setAccount(accountService.getReferenceById(account.id()));
             album=albumService.save(album);
-            AlbumViewDTO albumViewDTO=new AlbumViewDTO(album.getId(), album.getName(),album.getDescription(),null);
+            AlbumViewDTO albumViewDTO=new AlbumViewDTO(album.getId(), album.getName(),album.getDescription(),null,null);
             return  ResponseEntity.ok(albumViewDTO);
         }catch (Exception e){
             log.debug(AlbumError.ADD_ALBUM_ERROR.toString()+": "+e.getMessage());
@@ -83,24 +118,12 @@ public class AlbumController {
     @ApiResponse(responseCode = "200",description = " List of albums")
     @ApiResponse(responseCode = "401",description = "Token missing")
     @ApiResponse(responseCode = "403",description = "Token error")
-    @Operation(summary = "List of album api")
+    @Operation(summary = "List of album api, one page at a time")
     @SecurityRequirement(name="album-system-api")
-    public List<AlbumViewDTO> albums(Authentication authentication){
-        String email=authentication.getName();
-        Optional<Account> optionalAccount=accountService.findByEmail(email);
-        Account account=optionalAccount.get();
-        List<AlbumViewDTO>albums=new ArrayList<>();
-        for(Album album:albumService.findByAccount_id(account.getId())){
-            List<PhotoDTO> photos = new ArrayList<>();
-            for(Photo photo:photoService.findByAlbumId(album.getId())){
-                String link="albums/"+album.getId()+"/photos/"+photo.getId()+"/download-photo" ;
-                photos.add(new PhotoDTO(photo.getId(),photo.getName(),photo.getDescription(),photo.getFileName(),link));
-
-
-            }
-            albums.add(new AlbumViewDTO(album.getId(),album.getName(),album.getDescription(),photos));
-
-        }
+    public CursorPageDTO<AlbumViewDTO> albums(@RequestParam(defaultValue = "0") long cursor,
+                                              @RequestParam(required = false) Integer size,
+                                              @CurrentAccount AccountPrincipal account){
+        CursorPageDTO<AlbumViewDTO>albums=albumService.findViewsByAccountId(account.id(),cursor,size);
         return albums;
         //when response information don't need the response code the return don't need to use ResponseEnty
 
@@ -112,31 +135,21 @@ public class AlbumController {
     @ApiResponse(responseCode = "200",description = " List of albums")
     @ApiResponse(responseCode = "401",description = "Token missing")
     @ApiResponse(responseCode = "403",description = "Token error")
-    @Operation(summary = "List album by album ID")
+    @ApiResponse(responseCode = "404",description = "Album not found")
+    @Operation(summary = "List album by album ID, photos one page at a time")
     @SecurityRequirement(name="album-system-api")
-    public ResponseEntity<AlbumViewDTO> albums_by_id(@PathVariable long album_id, Authentication authentication){
-        String email=authentication.getName();
-        Optional<Account> optionalAccount=accountService.findByEmail(email);
-        Account account=optionalAccount.get();
-        Optional<Album>optionalAlbum=albumService.findById(album_id);
-        Album album;
-        if(optionalAlbum.isPresent()){
-            album=optionalAlbum.get();
-        }else{
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-
+    public ResponseEntity<AlbumViewDTO> albums_by_id(@PathVariable long album_id,
+                                                     @RequestParam(defaultValue = "0") long cursor,
+                                                     @RequestParam(required = false) Integer size,
+                                                     @CurrentAccount AccountPrincipal account){
+        Optional<Album>optionalAlbum=albumService.findOwnedAlbum(album_id,account.id());
+        if(!optionalAlbum.isPresent()){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         }
-        if(account.getId()!=album.getAccount().getId()){
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
-        }
-
-        List<PhotoDTO> photos=new ArrayList<>();
-        for(Photo photo: photoService.findByAlbumId(album_id)){
-            String link="albums/"+album.getId()+"/photos/"+photo.getId()+"/download-photo" ;
-            photos.add(new PhotoDTO(photo.getId(),photo.getName(),photo.getDescription(),photo.getFileName(),link));
+        Album album=optionalAlbum.get();
 
-        };
-            AlbumViewDTO albumViewDTO=new AlbumViewDTO(album.getId(),album.getName(),album.getDescription(),photos);
+        CursorPageDTO<PhotoDTO> photos=photoService.findPhotoPage(album_id,cursor,size);
+            AlbumViewDTO albumViewDTO=new AlbumViewDTO(album.getId(),album.getName(),album.getDescription(),photos.getItems(),photos.getNext());
             return ResponseEntity.ok(albumViewDTO);
     }
 
@@ -149,36 +162,20 @@ public class AlbumController {
     @Operation(summary = "Update an Album")
     @SecurityRequirement(name="album-system-api")
     public ResponseEntity<AlbumViewDTO> update_Album(@Valid @RequestBody AlbumPayloadDTO albumPayloadDTO,
-                                                     @PathVariable long album_id,Authentication authentication){
+                                                     @PathVariable long album_id,@CurrentAccount AccountPrincipal account){
     try{
-         String email=authentication.getName();
-         Optional<Account> optionalAccount=accountService.findByEmail(email);
-         Account account=optionalAccount.get();
-
-         Optional<Album>optionalAlbum=albumService.findById(album_id);
-         Album album;
-         if(optionalAlbum.isPresent()){
-             album=optionalAlbum.get();
-             if(account.getId()!=album.getAccount().getId()){
-                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
-             }
-
-         }else{
-             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+
+         Optional<Album>optionalAlbum=albumService.findOwnedAlbum(album_id,account.id());
+         if(!optionalAlbum.isPresent()){
+             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
          }
+         Album album=optionalAlbum.get();
 
          album.setName(albumPayloadDTO.getName());
          album.setDescription(albumPayloadDTO.getDescription());
          album=albumService.save(album);
-         List<PhotoDTO> photos=new ArrayList<>();
-         for(Photo photo: photoService.findByAlbumId(album.getId())){
-             String link="albums/"+album.getId()+"/photos/"+photo.getId()+"/download-photo" ;
-             photos.add(new PhotoDTO(photo.getId(),photo.getName(),photo.getDescription(),photo.getFileName(),link));
-
-
-
-         }
-         AlbumViewDTO  albumViewDTO = new AlbumViewDTO(album.getId(),album.getName(),album.getDescription(),photos);
+         CursorPageDTO<PhotoDTO> photos=photoService.findPhotoPage(album.getId(),0,null);
+         AlbumViewDTO  albumViewDTO = new AlbumViewDTO(album.getId(),album.getName(),album.getDescription(),photos.getItems(),photos.getNext());
          return ResponseEntity.ok(albumViewDTO);
     }catch(Exception e){
             log.debug(AlbumError.ADD_ALBUM_ERROR.toString()+":"+e.getMessage());
@@ -197,29 +194,12 @@ public class AlbumController {
     @Operation(summary = "Update a photo")
     @SecurityRequirement(name="album-system-api")
     public ResponseEntity<PhotoViewDTO> update_Photo(@Valid @RequestBody PhotoPayloadDTO photoPayloadDTO,
-                                                     @PathVariable long album_id, @PathVariable long photo_id, Authentication authentication){
+                                                     @PathVariable long album_id, @PathVariable long photo_id, @CurrentAccount AccountPrincipal account){
         try{
-            String email=authentication.getName();
-            Optional<Account> optionalAccount=accountService.findByEmail(email);
-            Account account=optionalAccount.get();
-
-            Optional<Album>optionalAlbum=albumService.findById(album_id);
-            Album album;
-            if(optionalAlbum.isPresent()){
-                album=optionalAlbum.get();
-                if(account.getId()!=album.getAccount().getId()){
-                    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
-                }
 
-            }else{
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-            }
-            Optional<Photo>optionalPhoto =photoService.findById(photo_id);
+            Optional<Photo>optionalPhoto =photoService.findOwnedPhoto(photo_id,album_id,account.id());
             if(optionalPhoto.isPresent()){
                 Photo photo=optionalPhoto.get();
-                if(photo.getId()!=album.getAccount().getId()){
-                    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
-                }
                 photo.setName(photoPayloadDTO.getName());
                 photo.setDescription(photoPayloadDTO.getDescription());
                 photoService.save(photo);
@@ -227,7 +207,7 @@ public class AlbumController {
                 return ResponseEntity.ok(photoViewDTO);
             }
             else{
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
             }
 
         }catch(Exception e){
@@ -248,38 +228,25 @@ public class AlbumController {
 @Operation(summary = "delete a photo")
 @SecurityRequirement(name = "album-system-api")
 public ResponseEntity<String> delete_photo(@PathVariable long album_id,
-                                           @PathVariable long photo_id,Authentication authentication) {
+                                           @PathVariable long photo_id,@CurrentAccount AccountPrincipal account) {
     try {
 
-        String email = authentication.getName();
-        Optional<Account> optionalAccount = accountService.findByEmail(email);
-        Account account = optionalAccount.get();
 
-        Optional<Album> optionaAlbum = albumService.findById(album_id);
-        Album album;
-        if (optionaAlbum.isPresent()) {
-            album = optionaAlbum.get();
-            if (account.getId() != album.getAccount().getId()) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
-            }
-        } else {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-        }
-
-        Optional<Photo> optionalPhoto = photoService.findById(photo_id);
+        Optional<Photo> optionalPhoto = photoService.findOwnedPhoto(photo_id, album_id, account.id());
         if(optionalPhoto.isPresent()){
             Photo photo = optionalPhoto.get();
-            if (photo.getAlbum().getId() != album_id) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
-            }
 
-            AppUtil.delete_photo_from_path(photo.getFileName(), PHOTOS_FOLDER_NAME, album_id);
-            AppUtil.delete_photo_from_path(photo.getFileName(), THUMBNAIL_FOLDER_NAME, album_id);
-            photoService.delete(photo);
+            String unreferenced = photoService.deletePhoto(photo);
+            if (unreferenced != null) {
+                storageCleaner.deleteBlobs(List.of(unreferenced));
+            } else if (photo.getBlob() == null) {
+                legacyLayoutMigrator.deleteLegacyPhoto(album_id, photo.getFileName());
+            }
+            contactSheetService.invalidate(album_id);
 
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(null);
         }else{
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         }
 
     } catch (Exception e) {
@@ -294,30 +261,18 @@ public ResponseEntity<String> delete_photo(@PathVariable long album_id,
     @ApiResponse(responseCode = "202", description = "Album deleted")
     @Operation(summary = "delete a photo")
     @SecurityRequirement(name = "studyeasy-demo-api")
-    public ResponseEntity<String> delete_album(@PathVariable long album_id,Authentication authentication) {
+    public ResponseEntity<String> delete_album(@PathVariable long album_id,@CurrentAccount AccountPrincipal account) {
         try {
-          //use for loop to delete every photos in the album
-            String email = authentication.getName();
-            Optional<Account> optionalAccount = accountService.findByEmail(email);
-            Account account = optionalAccount.get();
-
-            Optional<Album> optionaAlbum = albumService.findById(album_id);
-            Album album;
-            if (optionaAlbum.isPresent()) {
-                album = optionaAlbum.get();
-                if (account.getId() != album.getAccount().getId()) {
-                    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
-                }
-            } else {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-            }
 
-            for (Photo photo : photoService.findByAlbumId(album.getId())) {
-                AppUtil.delete_photo_from_path(photo.getFileName(), PHOTOS_FOLDER_NAME, album_id);
-                AppUtil.delete_photo_from_path(photo.getFileName(), THUMBNAIL_FOLDER_NAME, album_id);
-                photoService.delete(photo);
+            Optional<Album> optionaAlbum = albumService.findOwnedAlbum(album_id, account.id());
+            if (!optionaAlbum.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
             }
-            albumService.deleteAlbum(album);
+
+            //files of content no other album uses are removed in the background once the rows are gone
+            storageCleaner.deleteBlobs(albumService.deleteAlbum(album_id));
+            legacyLayoutMigrator.deleteLegacyAlbum(album_id);
+            contactSheetService.invalidate(album_id);
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(null);
 
 
@@ -330,72 +285,18 @@ public ResponseEntity<String> delete_photo(@PathVariable long album_id,
     @PostMapping(value = "albums/{album_id}/upload-photos", consumes = { "multipart/form-data" })
     @Operation(summary = "Upload photo into album")
     @ApiResponse(responseCode = "400", description = "Please check the payload or token")
+    @ApiResponse(responseCode = "503", description = "Image decoding is saturated, retry later")
     @SecurityRequirement(name = "album-system-api")
     public ResponseEntity<List<HashMap<String, List<?>>>> photos(
             @RequestPart(required = true) MultipartFile[] files,
-            @PathVariable long album_id, Authentication authentication) {
-        String email = authentication.getName();
-        Optional<Account> optionalAccount = accountService.findByEmail(email);
-        Account account = optionalAccount.get();
-        Optional<Album> optionaAlbum = albumService.findById(album_id);
-        Album album;
-        if (optionaAlbum.isPresent()) {
-            album = optionaAlbum.get();
-            if (account.getId() != album.getAccount().getId()) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-            }
-        } else {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            @PathVariable long album_id, @CurrentAccount AccountPrincipal account) {
+        Optional<Album> optionaAlbum = albumService.findOwnedAlbum(album_id, account.id());
+        if (!optionaAlbum.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         }
+        Album album = optionaAlbum.get();
 
-        List<PhotoViewDTO> fileNamesWithSuccess = new ArrayList<>();
-        List<String> fileNamesWithError = new ArrayList<>();
-
-        Arrays.asList(files).stream().forEach(file -> {
-            String contentType = file.getContentType();
-            if (contentType.equals("image/png")
-                    || contentType.equals("image/jpg")
-                    || contentType.equals("image/jpeg")) {
-
-                int length = 10;
-                boolean useLetters = true;
-                boolean useNumbers = true;
-
-                try {
-                    String fileName = file.getOriginalFilename();
-                    String generatedString = RandomStringUtils.random(length, useLetters, useNumbers);
-                    String final_photo_name = generatedString + fileName;
-                    String absolute_fileLocation = AppUtil.get_photo_upload_path(final_photo_name, PHOTOS_FOLDER_NAME,
-                            album_id);
-                    Path path = Paths.get(absolute_fileLocation);
-                    Files.copy(file.getInputStream(), path, StandardCopyOption.REPLACE_EXISTING);
-                    Photo photo = new Photo();
-                    photo.setName(fileName);
-                    photo.setFileName(final_photo_name);
-                    photo.setOriginalFileName(fileName);
-                    photo.setAlbum(album);
-                    photoService.save(photo);
-
-                    PhotoViewDTO photoViewDTO = new PhotoViewDTO(photo.getId(), photo.getName(), photo.getDescription());
-                    fileNamesWithSuccess.add(photoViewDTO);
-                    BufferedImage thumbImg = AppUtil.getThumbnail(file, THUMBNAIL_WIDTH);
-                    File thumbnail_location = new File(
-                            AppUtil.get_photo_upload_path(final_photo_name, THUMBNAIL_FOLDER_NAME, album_id));
-                    ImageIO.write(thumbImg, file.getContentType().split("/")[1], thumbnail_location);
-
-                } catch (Exception e) {
-                    log.debug(AlbumError.PHOTO_UPLOAD_ERROR.toString() + ": " + e.getMessage());
-                    fileNamesWithError.add(file.getOriginalFilename());
-                }
-
-            } else {
-                fileNamesWithError.add(file.getOriginalFilename());
-            }
-        });
-
-        HashMap<String, List<?>> result = new HashMap<>();
-        result.put("SUCCESS", fileNamesWithSuccess);
-        result.put("ERRORS", fileNamesWithError);
+        HashMap<String, List<?>> result = photoUploadService.upload(album, files);
 
         List<HashMap<String, List<?>>> response = new ArrayList<>();
         response.add(result);
@@ -403,61 +304,323 @@ public ResponseEntity<String> delete_photo(@PathVariable long album_id,
         return ResponseEntity.ok(response);
 
     }
+    @PostMapping(value = "albums/{album_id}/upload-sessions",consumes = "application/json",produces = "application/json")
+    @ResponseStatus(HttpStatus.CREATED)
+    @Operation(summary = "Start a resumable upload of one photo")
+    @ApiResponse(responseCode = "201", description = "Session created, send the chunks with PUT")
+    @ApiResponse(responseCode = "413", description = "Photo is larger than allowed")
+    @ApiResponse(responseCode = "415", description = "Only png and jpeg photos are accepted")
+    @SecurityRequirement(name = "album-system-api")
+    public ResponseEntity<UploadSessionViewDTO> createUploadSession(@Valid @RequestBody UploadSessionPayloadDTO payload,
+                                                                    @PathVariable long album_id,@CurrentAccount AccountPrincipal account)throws IOException{
+        Optional<Album> optionaAlbum = albumService.findOwnedAlbum(album_id, account.id());
+        if (!optionaAlbum.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        UploadSession session = uploadSessionService.create(optionaAlbum.get(), payload);
+        return ResponseEntity.status(HttpStatus.CREATED).body(uploadSessionService.toView(session));
+    }
+
+    @GetMapping(value = "albums/{album_id}/upload-sessions/{session_id}",produces = "application/json")
+    @Operation(summary = "Byte ranges of a resumable upload received so far")
+    @SecurityRequirement(name = "album-system-api")
+    public ResponseEntity<UploadSessionViewDTO> uploadSession(@PathVariable long album_id,@PathVariable String session_id,
+                                                              @CurrentAccount AccountPrincipal account){
+        Optional<UploadSession> optionalSession = uploadSessionService.findOwnedSession(session_id, album_id, account.id());
+        if (!optionalSession.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        return ResponseEntity.ok(uploadSessionService.toView(optionalSession.get()));
+    }
+
+    //the body is read straight from the request into the session file, a chunk is never held in memory
+    @PutMapping(value = "albums/{album_id}/upload-sessions/{session_id}",consumes = "application/octet-stream",produces = "application/json")
+    @Operation(summary = "Send one chunk of a resumable upload, placed by its Content-Range")
+    @ApiResponse(responseCode = "400", description = "Missing Content-Range or the chunk ended early; what arrived is kept")
+    @ApiResponse(responseCode = "416", description = "Chunk is outside the declared size")
+    @SecurityRequirement(name = "album-system-api")
+    public ResponseEntity<UploadSessionViewDTO> uploadChunk(@PathVariable long album_id,@PathVariable String session_id,
+                                                            @RequestHeader(value = HttpHeaders.CONTENT_RANGE,required = false) String content_range,
+                                                            @CurrentAccount AccountPrincipal account,HttpServletRequest request)throws IOException{
+        Optional<UploadSession> optionalSession = uploadSessionService.findOwnedSession(session_id, album_id, account.id());
+        if (!optionalSession.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        UploadSession session = uploadSessionService.writeChunk(optionalSession.get(), content_range, request.getInputStream());
+        return ResponseEntity.ok(uploadSessionService.toView(session));
+    }
+
+    @PostMapping(value = "albums/{album_id}/upload-sessions/{session_id}/commit",produces = "application/json")
+    @Operation(summary = "Finish a resumable upload and create the photo")
+    @ApiResponse(responseCode = "201", description = "Photo created, its thumbnail is generated in the background")
+    @ApiResponse(responseCode = "409", description = "Some byte ranges are still missing")
+    @ApiResponse(responseCode = "503", description = "Image decoding is saturated, retry the commit later")
+    @SecurityRequirement(name = "album-system-api")
+    public ResponseEntity<PhotoViewDTO> commitUploadSession(@PathVariable long album_id,@PathVariable String session_id,
+                                                            @CurrentAccount AccountPrincipal account)throws IOException{
+        Optional<UploadSession> optionalSession = uploadSessionService.findOwnedSession(session_id, album_id, account.id());
+        if (!optionalSession.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        PhotoViewDTO photo = uploadSessionService.commit(optionalSession.get());
+        if (photo == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(photo);
+    }
+
+    @DeleteMapping(value = "albums/{album_id}/upload-sessions/{session_id}")
+    @Operation(summary = "Abandon a resumable upload")
+    @SecurityRequirement(name = "album-system-api")
+    public ResponseEntity<String> deleteUploadSession(@PathVariable long album_id,@PathVariable String session_id,
+                                                      @CurrentAccount AccountPrincipal account)throws IOException{
+        Optional<UploadSession> optionalSession = uploadSessionService.findOwnedSession(session_id, album_id, account.id());
+        if (!optionalSession.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        uploadSessionService.delete(optionalSession.get());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(null);
+    }
+
+    @GetMapping(value = "albums/{album_id}/contact-sheet/map",produces = "application/json")
+    @Operation(summary = "Where each photo is on the album's contact sheet")
+    @ApiResponse(responseCode = "304", description = "Contact sheet not modified")
+    @ApiResponse(responseCode = "404", description = "Album not found or no thumbnail is ready yet")
+    @ApiResponse(responseCode = "503", description = "Image decoding is saturated, retry later")
+    @SecurityRequirement(name="album-system-api")
+    public ResponseEntity<ContactSheetDTO> contactSheetMap(@PathVariable long album_id,@CurrentAccount AccountPrincipal account,
+                                                           HttpServletRequest request,HttpServletResponse response){
+        Optional<Album> optionalAlbum = albumService.findOwnedAlbum(album_id, account.id());
+        if (!optionalAlbum.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        Optional<ContactSheet> optionalSheet;
+        try{
+            optionalSheet=contactSheetService.current(album_id);
+        }catch (DecodeBudgetExceededException e){
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER,"1").body(null);
+        }catch (IOException e){
+            return ResponseEntity.internalServerError().build();
+        }
+        if (!optionalSheet.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        ContactSheet sheet = optionalSheet.get();
+        response.setHeader(HttpHeaders.CACHE_CONTROL,CacheControl.noCache().cachePrivate().getHeaderValue());
+        if(new ServletWebRequest(request,response).checkNotModified(contactSheetService.etag(sheet))){
+            return null;
+        }
+        return ResponseEntity.ok(contactSheetService.toView(sheet));
+    }
+
+    //one JPEG of the album's first thumbnails, the map tells which photo is where
+    @GetMapping("albums/{album_id}/contact-sheet")
+    @Operation(summary = "The album's first thumbnails in one image")
+    @ApiResponse(responseCode = "304", description = "Contact sheet not modified")
+    @ApiResponse(responseCode = "404", description = "Album not found or no thumbnail is ready yet")
+    @ApiResponse(responseCode = "503", description = "Image decoding is saturated, retry later")
+    @SecurityRequirement(name="album-system-api")
+    public ResponseEntity<?> contactSheet(@PathVariable long album_id,@CurrentAccount AccountPrincipal account,
+                                          HttpServletRequest request,HttpServletResponse response){
+        Optional<Album> optionalAlbum = albumService.findOwnedAlbum(album_id, account.id());
+        if (!optionalAlbum.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL,CacheControl.noCache().cachePrivate().getHeaderValue());
+        try{
+            Optional<ContactSheet> optionalSheet=contactSheetService.current(album_id);
+            if (!optionalSheet.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            ContactSheet sheet = optionalSheet.get();
+            String etag=contactSheetService.etag(sheet);
+            ServletWebRequest webRequest=new ServletWebRequest(request,response);
+            if(webRequest.checkNotModified(etag)){
+                return null;
+            }
+            PhotoStorage.StoredObject stored=contactSheetService.stat(sheet);
+            fileDownloadService.write(request,response,stored,MediaType.IMAGE_JPEG,
+                    "inline; filename=\"contact-sheet-"+album_id+".jpg\"",etag,stored.lastModified());
+            return null;
+        }catch (DecodeBudgetExceededException e){
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER,"1").body(null);
+        }catch (NoSuchFileException e){
+            response.setHeader(HttpHeaders.CACHE_CONTROL,CacheControl.noStore().getHeaderValue());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }catch (IOException e){
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    //every original of the album in one ZIP, written while it is read from the store
+    @GetMapping(value = "albums/{album_id}/download",produces = "application/zip")
+    @Operation(summary = "Download the whole album as a ZIP")
+    @ApiResponse(responseCode = "404", description = "Album not found")
+    @ApiResponse(responseCode = "503", description = "Too many albums are being downloaded, retry later")
+    @SecurityRequirement(name="album-system-api")
+    public ResponseEntity<StreamingResponseBody> downloadAlbum(@PathVariable long album_id,
+                                                               @RequestParam(defaultValue = "false") boolean thumbnails,
+                                                               @CurrentAccount AccountPrincipal account){
+        Optional<Album> optionalAlbum = albumService.findOwnedAlbum(album_id, account.id());
+        if (!optionalAlbum.isPresent()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        StreamingResponseBody body=albumExportService.export(album_id,thumbnails);
+        if(body==null){
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER,"5").body(null);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,"attachment; filename=\"album-"+album_id+".zip\"")
+                .cacheControl(CacheControl.noStore())
+                .body(body);
+    }
+
     @GetMapping("albums/{album_id}/photos/{photo_id}/download-photo")
+    @ApiResponse(responseCode = "206", description = "Requested byte range(s) of the photo")
+    @ApiResponse(responseCode = "304", description = "Photo not modified")
     @SecurityRequirement(name="album-system-api")
     public ResponseEntity<?> downloadPhoto(@PathVariable("album_id") long album_id,
-                                           @PathVariable("photo_id") long photo_id, Authentication authentication){
+                                           @PathVariable("photo_id") long photo_id, @CurrentAccount AccountPrincipal account,
+                                           HttpServletRequest request, HttpServletResponse response){
 
-        return downloadFile(album_id,photo_id,PHOTOS_FOLDER_NAME,authentication);
+        return downloadFile(album_id,photo_id,AppUtil.PHOTOS_FOLDER_NAME,null,account,request,response);
     }
     @GetMapping("albums/{album_id}/photos/{photo_id}/download-thumbnail")
+    @ApiResponse(responseCode = "202", description = "Thumbnail is still being generated, retry later")
+    @ApiResponse(responseCode = "304", description = "Thumbnail not modified")
+    @ApiResponse(responseCode = "400", description = "Size is not one of the allowed thumbnail sizes")
+    @ApiResponse(responseCode = "503", description = "Image decoding is saturated, retry later")
     @SecurityRequirement(name="album-system-api")
     public ResponseEntity<?> downloadThumbnail(@PathVariable("album_id") long album_id,
-                                           @PathVariable("photo_id") long photo_id, Authentication authentication){
-
-        return downloadFile(album_id,photo_id,THUMBNAIL_FOLDER_NAME,authentication);
+                                           @PathVariable("photo_id") long photo_id,
+                                           @RequestParam(value = "size",required = false) Integer size,
+                                           @CurrentAccount AccountPrincipal account,
+                                           HttpServletRequest request, HttpServletResponse response){
+        if(size!=null && !renditionService.isAllowed(size)){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+        //the default size comes from the upload pipeline, the others are decoded on first request
+        Integer rendition=size==null || size==AppUtil.THUMBNAIL_WIDTH ? null : size;
+        return downloadFile(album_id,photo_id,AppUtil.THUMBNAIL_FOLDER_NAME,rendition,account,request,response);
     }
 
-    public ResponseEntity<?> downloadFile(long album_id, long photo_id, String folder_name,Authentication authentication){
-
-        String email=authentication.getName();
-        Optional<Account>optionalAccount=accountService.findByEmail(email);
-        Account account=optionalAccount.get();
-        Optional<Album>optionalAlbum=albumService.findById(album_id);
-        Album album;
-        if(optionalAccount.isPresent()){
-            album=optionalAlbum.get();
-            if(account.getId()!=album.getAccount().getId()){
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-            }
-        }else{
+    //many thumbnails in one round trip, one multipart/mixed part per requested photo
+    @PostMapping(value = "albums/{album_id}/thumbnails:batch",consumes = "application/json",produces = "multipart/mixed")
+    @Operation(summary = "Download the thumbnails of many photos of an album at once")
+    @ApiResponse(responseCode = "200", description = "One part per photo id, X-Thumbnail-Status tells READY, PENDING, FAILED or NOT_FOUND")
+    @ApiResponse(responseCode = "400", description = "No photo ids or more than allowed in one batch")
+    @ApiResponse(responseCode = "404", description = "None of the photos is in an album of the account")
+    @SecurityRequirement(name="album-system-api")
+    public ResponseEntity<?> downloadThumbnails(@PathVariable long album_id,@Valid @RequestBody ThumbnailBatchPayloadDTO payload,
+                                                @CurrentAccount AccountPrincipal account,HttpServletResponse response){
+        //checked here: the javax @NotEmpty on the payload is not enforced by the jakarta validator
+        List<Long> photo_ids=payload.getPhotoIds();
+        if(photo_ids==null || photo_ids.isEmpty() || photo_ids.size()>thumbnailBatchService.getMaxPhotos() || photo_ids.contains(null)){
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
-
         }
-        Optional<Photo>optionalPhoto=photoService.findById(photo_id);
+        try{
+            if(!thumbnailBatchService.write(album_id,account.id(),photo_ids,response)){
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+        }catch (IOException e){
+            //parts already sent cannot be taken back, the client sees a truncated body
+            log.debug("Thumbnail batch of album "+album_id+" aborted: "+e.getMessage());
+        }
+        return null;
+    }
+
+    //error cases are returned as ResponseEntity; the file itself is written by FileDownloadService, which then returns null
+    //rendition is the width of a non-default thumbnail size, null for originals and default thumbnails
+    public ResponseEntity<?> downloadFile(long album_id, long photo_id, String folder_name,Integer rendition,AccountPrincipal account,
+                                          HttpServletRequest request, HttpServletResponse response){
+
+        //the only query of a download: a photo that is missing, in another album or owned by someone else all look the same
+        Optional<Photo>optionalPhoto=photoService.findOwnedPhoto(photo_id,album_id,account.id());
         if(optionalPhoto.isPresent()){
             Photo photo = optionalPhoto.get();
-            if(photo.getAlbum().getId()!=album_id){
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
+            if(folder_name.equals(AppUtil.THUMBNAIL_FOLDER_NAME)){
+                //rows written before the thumbnail pipeline have no status and are treated as ready
+                if(photo.getThumbnailStatus()==ThumbnailStatus.PENDING){
+                    return ResponseEntity.status(HttpStatus.ACCEPTED)
+                            .header(HttpHeaders.RETRY_AFTER,"1")
+                            .body(null);
+                }
+                if(photo.getThumbnailStatus()==ThumbnailStatus.FAILED){
+                    return ResponseEntity.internalServerError().build();
+                }
             }
 
-            Resource resource= null;
-            try{
-                resource = AppUtil.getFileAsResource(album_id,folder_name,photo.getFileName());
+            //thumbnails never change for a stored name; originals are revalidated, which is a cheap 304
+            response.setHeader(HttpHeaders.CACHE_CONTROL,folder_name.equals(AppUtil.THUMBNAIL_FOLDER_NAME)
+                    ? CacheControl.maxAge(365,TimeUnit.DAYS).cachePrivate().immutable().getHeaderValue()
+                    : CacheControl.noCache().cachePrivate().getHeaderValue());
+            String stored_folder=rendition!=null ? AppUtil.getRenditionFolder(rendition) : folder_name;
+            String etag=AppUtil.getFileETag(stored_folder,photo.getFileName());
+            ServletWebRequest webRequest=new ServletWebRequest(request,response);
+            //a matching If-None-Match is answered from the file name alone, before the file is looked at
+            if(request.getHeader(HttpHeaders.IF_NONE_MATCH)!=null && webRequest.checkNotModified(etag)){
+                return null;
+            }
+
+            MediaType contentType=photo.getContentType()!=null
+                    ? MediaType.parseMediaType(photo.getContentType())
+                    : MediaTypeFactory.getMediaType(photo.getFileName()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            String headerValue="attachment; filename=\""+photo.getOriginalFileName()+ "\"";//this points the information of the file
+
+            //hot thumbnails are served from the off-heap cache without touching the file system
+            if(folder_name.equals(AppUtil.THUMBNAIL_FOLDER_NAME) && rendition==null && request.getHeader(HttpHeaders.RANGE)==null
+                    && photo.getBlob()!=null){
+                try{
+                    ThumbnailCache.CachedThumbnail cached=thumbnailCache.get(photo.getFileName());
+                    if(cached!=null){
+                        if(!webRequest.checkNotModified(etag,cached.lastModified())){
+                            fileDownloadService.writeBuffer(request,response,cached.bytes(),contentType,headerValue);
+                        }
+                        return null;
+                    }
+                }catch (NoSuchFileException e){
+                    response.setHeader(HttpHeaders.CACHE_CONTROL,CacheControl.noStore().getHeaderValue());
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+                }catch (IOException e){
+                    return ResponseEntity.internalServerError().build();
+                }
+            }
 
+            PhotoStorage.StoredObject stored;
+            try{
+                //photos not yet moved by the LegacyLayoutMigrator are still in their album's folder, in the default size only
+                if(photo.getBlob()==null){
+                    stored=legacyLayoutMigrator.statLegacy(album_id,folder_name,photo.getFileName());
+                }else if(rendition!=null){
+                    stored=renditionService.get(photo.getFileName(),contentType.getSubtype(),rendition);
+                }else{
+                    stored=fileDownloadService.stat(folder_name,photo.getFileName());
+                }
+            }catch (DecodeBudgetExceededException e){
+                response.setHeader(HttpHeaders.CACHE_CONTROL,CacheControl.noStore().getHeaderValue());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER,"1")
+                        .body(null);
+            }catch (NoSuchFileException e){
+                response.setHeader(HttpHeaders.CACHE_CONTROL,CacheControl.noStore().getHeaderValue());
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
             }catch (IOException e){
+                response.setHeader(HttpHeaders.CACHE_CONTROL,CacheControl.noStore().getHeaderValue());
                 return ResponseEntity.internalServerError().build();
             }
+            if(webRequest.checkNotModified(etag,stored.lastModified())){
+                return null;
+            }
 
-            String contentType = "application/octet-stream";
-            String headerValue="attachment; filename=\""+photo.getOriginalFileName()+ "\"";//this points the information of the file
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION,headerValue)
-                    .body(resource);
+            try{
+                fileDownloadService.write(request,response,stored,contentType,headerValue,etag,stored.lastModified());
+            }catch (IOException e){
+                return ResponseEntity.internalServerError().build();
+            }
+            return null;
         }else{
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         }
     }
 
@@ -1,5 +1,7 @@
 package com.albumSystem.demo.controller;
 
+import com.albumSystem.demo.Security.AccountPrincipal;
+import com.albumSystem.demo.Security.CurrentAccount;
 import com.albumSystem.demo.model.Account;
 import com.albumSystem.demo.payload.auth.*;
 import com.albumSystem.demo.service.AccountService;
@@ -57,7 +59,8 @@ public class AuthController {
                 authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(userLoginDTO.getEmail(), userLoginDTO.getPassword())));
 
         Authentication authentication= authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(userLoginDTO.getEmail(), userLoginDTO.getPassword()));
-            return  ResponseEntity.ok(new TokenDTO(tokenService.generateToken(authentication)));
+            AccountPrincipal account=accountService.findPrincipalByEmail(authentication.getName());
+            return  ResponseEntity.ok(new TokenDTO(tokenService.generateToken(authentication,account.id())));
         } catch (Exception e){
             log.debug(AccountError.TOKEN_GENERATION_ERROR.toString()+":"+e.getMessage());
             return new ResponseEntity<>(new TokenDTO(null),HttpStatus.BAD_REQUEST);
@@ -124,12 +127,8 @@ public class AuthController {
     @ApiResponse(responseCode = "403",description = "Token error")
     @SecurityRequirement(name="album-system-api")
     @Operation(summary = "View profile")
-    public ProfileDTO profile(Authentication authentication){
-        String email = authentication.getName();
-        Optional<Account>optionalAccount=accountService.findByEmail(email);
-
-        Account account=optionalAccount.get();
-        ProfileDTO profileDTO=new ProfileDTO(account.getId(),account.getEmail(),account.getAuthorities());
+    public ProfileDTO profile(@CurrentAccount AccountPrincipal principal){
+        ProfileDTO profileDTO=new ProfileDTO(principal.id(),principal.email(),principal.authorities());
         return profileDTO;
     }
 
@@ -139,9 +138,8 @@ public class AuthController {
     @ApiResponse(responseCode = "403",description = "Token error")
     @SecurityRequirement(name="album-system-api")
     @Operation(summary = "Update profile")
-    public AccountViewDTO update_password(@Valid @RequestBody PasswordDTO passwordDTO, Authentication authentication){
-        String email = authentication.getName();
-        Optional<Account>optionalAccount=accountService.findByEmail(email);
+    public AccountViewDTO update_password(@Valid @RequestBody PasswordDTO passwordDTO, @CurrentAccount AccountPrincipal principal){
+        Optional<Account>optionalAccount=accountService.findByID(principal.id());
 
         Account account=optionalAccount.get();
         account.setPassword(passwordDTO.getPassword());
@@ -161,14 +159,9 @@ public class AuthController {
     @SecurityRequirement(name="album-system-api")
     @ResponseStatus(HttpStatus.OK)
     @Operation(summary = "Delete profile")
-    public ResponseEntity<String> delete_profile(Authentication authentication){
-        String email = authentication.getName();
-        Optional<Account>optionalAccount=accountService.findByEmail(email);
-        if(optionalAccount.isPresent()){
-            accountService.deleteById(optionalAccount.get().getId());
-            return ResponseEntity.ok("User delete");
-        }
-        return new ResponseEntity<String>("Bad Request",HttpStatus.BAD_REQUEST);
+    public ResponseEntity<String> delete_profile(@CurrentAccount AccountPrincipal principal){
+        accountService.deleteById(principal.id());
+        return ResponseEntity.ok("User delete");
 
     }
 }
@@ -0,0 +1,10 @@
+package com.albumSystem.demo.exception;
+
+import java.io.IOException;
+
+//the global decode memory budget stayed exhausted for longer than the configured wait
+public class DecodeBudgetExceededException extends IOException {
+    public DecodeBudgetExceededException(String message){
+        super(message);
+    }
+}
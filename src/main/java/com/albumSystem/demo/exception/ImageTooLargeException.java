@@ -0,0 +1,10 @@
+package com.albumSystem.demo.exception;
+
+import java.io.IOException;
+
+//the image header announces more pixels than we are willing to decode (decompression bomb or oversized original)
+public class ImageTooLargeException extends IOException {
+    public ImageTooLargeException(String message){
+        super(message);
+    }
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 
 @Entity
+@Table(indexes = @Index(name = "idx_album_account_id", columnList = "account_id, id"))
 @Setter
 @Getter
 @ToString
@@ -18,7 +19,9 @@ public class Album {
     private String name;
 
     private String description;
-    @ManyToOne
+    //ownership is checked on account_id in the query, the account itself is never needed with the album
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinColumn(name="account_id",referencedColumnName = "id",nullable = false)
     private Account account;
 
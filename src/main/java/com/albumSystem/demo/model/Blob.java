@@ -0,0 +1,39 @@
+package com.albumSystem.demo.model;
+
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+//one stored file per distinct content. Photos reference it by hash; the file and its thumbnail are removed once
+//the last reference is gone
+@Entity
+@Table(name = "stored_blob", indexes = @Index(name = "idx_blob_ref_count", columnList = "refCount"))
+@Setter
+@Getter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class Blob {
+
+    //hex SHA-256 of the content, also its file name under photos/ and thumbnails/
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    private long size;
+
+    private String contentType;
+
+    //CRC-32 of the content, computed in the same pass as the hash
+    private long crc32;
+
+    private int refCount;
+
+    //shared by every photo of this content, the thumbnail is generated once
+    @Enumerated(EnumType.STRING)
+    private ThumbnailStatus thumbnailStatus;
+
+    //epoch millis the thumbnail was last asked for; a blob PENDING for too long lost its task and is queued again
+    private Long pendingSince;
+
+}
@@ -0,0 +1,27 @@
+package com.albumSystem.demo.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+//layout of an album's contact sheet, the images themselves are in the PhotoStorage. Keyed by album id without a
+//foreign key, the sheet is dropped with its album by ContactSheetService
+@Entity
+@Setter
+@Getter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class ContactSheet {
+
+    @Id
+    private long albumId;
+
+    //bumped on every redraw, it is the ETag of the sheet and its map
+    private long version;
+
+    //"id:width:height" of every tile in grid order; tiles are appended while the album only grows.
+    //a lob, its length follows album.contact-sheet.max-photos
+    @Lob
+    private String tiles;
+
+}
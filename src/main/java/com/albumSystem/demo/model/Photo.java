@@ -1,17 +1,21 @@
 package com.albumSystem.demo.model;
 
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
 import jakarta.persistence.*;
 import lombok.*;
 
 @Entity
+@Table(indexes = @Index(name = "idx_photo_album_id", columnList = "album_id, id"))
 @Setter
 @Getter
 @ToString
 @AllArgsConstructor
 @NoArgsConstructor
 public class Photo {
+    //one sequence call hands out 50 ids, so a bulk upload costs a single nextval for the whole batch
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE,generator = "photo_seq")
+    @SequenceGenerator(name = "photo_seq",sequenceName = "photo_seq",allocationSize = 50)
     private long id;
 
     private String name;
@@ -20,9 +24,22 @@ public class Photo {
 
     private String originalFileName;
 
+    //hash of the stored content, so paths and ETags are derived without loading the blob
     private String fileName;
 
-    @ManyToOne
+    private String contentType;
+
+    @Enumerated(EnumType.STRING)
+    private ThumbnailStatus thumbnailStatus;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name="blob_hash",referencedColumnName = "hash")
+    private Blob blob;
+
+    //lazy so an ownership lookup loads one row; only the id of the proxy is read on the request path
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinColumn(name="album_id",referencedColumnName = "id",nullable = false)
     private Album album;
 
@@ -0,0 +1,45 @@
+package com.albumSystem.demo.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+//a resumable upload in progress: chunks land in a session file at their offsets and are recorded here,
+//the photo row is only created by the commit
+@Entity
+@Table(indexes = @Index(name = "idx_upload_session_updated_at", columnList = "updatedAt"))
+@Setter
+@Getter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSession {
+
+    //random, so a session cannot be guessed from another one
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name="album_id",referencedColumnName = "id",nullable = false)
+    private Album album;
+
+    private String originalFileName;
+
+    private String contentType;
+
+    //declared when the session is created, every chunk has to fit inside it
+    private long size;
+
+    //merged inclusive byte ranges received so far, e.g. "0-1048575,2097152-3145727"
+    @Column(length = 4000)
+    private String receivedRanges;
+
+    private long receivedBytes;
+
+    //sessions without a chunk for the configured time are dropped
+    private LocalDateTime updatedAt;
+
+}
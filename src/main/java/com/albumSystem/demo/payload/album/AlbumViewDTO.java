@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import javax.validation.constraints.NotBlank;
+import java.util.ArrayList;
 import java.util.List;
 
 @Getter
@@ -27,4 +28,12 @@ public class AlbumViewDTO {
 
     private List<PhotoDTO> photos;
 
+    @Schema(description = "Cursor for the next page of photos, null when all photos are listed")
+    private Long photos_next;
+
+    //used by the JPQL constructor expression, photos are filled in afterwards
+    public AlbumViewDTO(long id, String name, String description){
+        this(id, name, description, new ArrayList<>(), null);
+    }
+
 }
@@ -0,0 +1,21 @@
+package com.albumSystem.demo.payload.album;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class ContactSheetDTO {
+    private long version;
+    //square cells of tile x tile pixels, columns per row
+    private int tile;
+    private int columns;
+    private int width;
+    private int height;
+    private List<ContactSheetTileDTO> tiles;
+
+}
@@ -0,0 +1,18 @@
+package com.albumSystem.demo.payload.album;
+
+import lombok.*;
+
+//where the thumbnail of one photo is drawn on the sheet, centered in its cell
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class ContactSheetTileDTO {
+    private long id;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+
+}
@@ -0,0 +1,18 @@
+package com.albumSystem.demo.payload.album;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageDTO<T> {
+    private List<T> items;
+
+    @Schema(description = "Pass as cursor to get the next page, null on the last page")
+    private Long next;
+}
@@ -0,0 +1,22 @@
+package com.albumSystem.demo.payload.album;
+
+import lombok.*;
+
+//flat projection of the photo columns needed for listings, so no Photo/Album/Account graph is hydrated
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class PhotoSummaryDTO {
+    private long albumId;
+    private long id;
+    private String name;
+    private String description;
+    private String fileName;
+
+    public PhotoDTO toPhotoDTO(){
+        String link="albums/"+albumId+"/photos/"+id+"/download-photo";
+        return new PhotoDTO(id,name,description,fileName,link);
+    }
+}
@@ -0,0 +1,19 @@
+package com.albumSystem.demo.payload.album;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class ThumbnailBatchPayloadDTO {
+    @NotEmpty
+    @Schema(description = "Ids of the album's photos whose thumbnails are wanted, in the order of the parts",example = "[1, 2, 3]",requiredMode = Schema.RequiredMode.REQUIRED)
+    private List<Long> photoIds;
+
+}
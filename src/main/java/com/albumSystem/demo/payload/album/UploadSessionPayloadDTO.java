@@ -0,0 +1,27 @@
+package com.albumSystem.demo.payload.album;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Positive;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class UploadSessionPayloadDTO {
+    @NotBlank
+    @Schema(description = "Original file name",example = "IMG_0001.jpg",requiredMode = Schema.RequiredMode.REQUIRED)
+    private String fileName;
+
+    @NotBlank
+    @Schema(description = "Content type of the file",example = "image/jpeg",requiredMode = Schema.RequiredMode.REQUIRED)
+    private String contentType;
+
+    @Positive
+    @Schema(description = "Total size of the file in bytes",example = "52428800",requiredMode = Schema.RequiredMode.REQUIRED)
+    private long size;
+
+}
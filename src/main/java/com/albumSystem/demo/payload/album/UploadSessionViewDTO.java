@@ -0,0 +1,20 @@
+package com.albumSystem.demo.payload.album;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSessionViewDTO {
+    private String id;
+    private String fileName;
+    private long size;
+    private long receivedBytes;
+    //inclusive byte ranges already stored, e.g. "0-1048575"; the client sends what is missing
+    private List<String> received;
+
+}
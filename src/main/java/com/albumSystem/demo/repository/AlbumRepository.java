@@ -1,13 +1,32 @@
 package com.albumSystem.demo.repository;
 
 import com.albumSystem.demo.model.Album;
+import com.albumSystem.demo.payload.album.AlbumViewDTO;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface AlbumRepository extends JpaRepository<Album,Long> {
     List<Album>findByAccount_Id(long id);
 
+    //ownership check and load in one primary key lookup; the owner is compared on the foreign key, no join
+    Optional<Album> findByIdAndAccount_Id(long id, long accountId);
+
+    //no select-before-delete like deleteById
+    @Modifying
+    @Query("delete from Album a where a.id = :id")
+    int deleteAlbumById(@Param("id") long id);
+
+    //keyset page: seeks past the cursor on the (account_id, id) index, pass PageRequest.of(0, n) so there is never an OFFSET.
+    @Query("select new com.albumSystem.demo.payload.album.AlbumViewDTO(a.id, a.name, a.description) " +
+            "from Album a where a.account.id = :accountId and a.id > :after order by a.id")
+    List<AlbumViewDTO> findViewsByAccountId(@Param("accountId") long accountId, @Param("after") long after, Pageable pageable);
+
 }
@@ -0,0 +1,67 @@
+package com.albumSystem.demo.repository;
+
+import com.albumSystem.demo.model.Blob;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BlobRepository extends JpaRepository<Blob,String> {
+
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount + 1 where b.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash);
+
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount - 1 where b.hash = :hash")
+    int decrementRefCount(@Param("hash") String hash);
+
+    //drops one reference per photo of the album from every blob the album uses, in a single statement
+    @Modifying
+    @Query(value = "update stored_blob b set ref_count = ref_count - " +
+            "(select count(*) from photo p where p.album_id = :albumId and p.blob_hash = b.hash) " +
+            "where b.hash in (select p.blob_hash from photo p where p.album_id = :albumId)", nativeQuery = true)
+    int releaseAlbum(@Param("albumId") long albumId);
+
+    @Modifying
+    @Query("delete from Blob b where b.hash = :hash and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    //blobs of the album's photos that are left without references, read before the photo rows are deleted
+    @Query(value = "select b.hash from stored_blob b where b.ref_count <= 0 " +
+            "and b.hash in (select p.blob_hash from photo p where p.album_id = :albumId)", nativeQuery = true)
+    List<String> findUnreferencedHashesOfAlbum(@Param("albumId") long albumId);
+
+    //only the given rows, and only while still unreferenced: content re-uploaded meanwhile keeps its row
+    @Modifying
+    @Query("delete from Blob b where b.hash in :hashes and b.refCount <= 0")
+    int deleteUnreferenced(@Param("hashes") Collection<String> hashes);
+
+    //which of the given hashes still have a row; used to tell orphaned files apart
+    @Query("select b.hash from Blob b where b.hash in :hashes")
+    List<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+    @Transactional
+    @Modifying
+    @Query("update Blob b set b.thumbnailStatus = :status where b.hash = :hash")
+    int updateThumbnailStatus(@Param("hash") String hash, @Param("status") ThumbnailStatus status);
+
+    @Transactional
+    @Modifying
+    @Query("update Blob b set b.thumbnailStatus = com.albumSystem.demo.util.constants.ThumbnailStatus.PENDING, b.pendingSince = :since where b.hash = :hash")
+    int markThumbnailPending(@Param("hash") String hash, @Param("since") long since);
+
+    //referenced blobs waiting for a thumbnail since before the given time, in hash order after the given one;
+    //rows from before pendingSince existed count as waiting since forever
+    @Query("select b from Blob b where b.thumbnailStatus = com.albumSystem.demo.util.constants.ThumbnailStatus.PENDING " +
+            "and b.refCount > 0 and (b.pendingSince is null or b.pendingSince < :before) and b.hash > :after order by b.hash")
+    List<Blob> findPendingSince(@Param("before") long before, @Param("after") String after, Pageable pageable);
+}
@@ -0,0 +1,19 @@
+package com.albumSystem.demo.repository;
+
+import com.albumSystem.demo.model.ContactSheet;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ContactSheetRepository extends JpaRepository<ContactSheet,Long> {
+
+    //no-op when the album never had a sheet
+    @Transactional
+    @Modifying
+    @Query("delete from ContactSheet s where s.albumId = :albumId")
+    int deleteByAlbumId(@Param("albumId") long albumId);
+}
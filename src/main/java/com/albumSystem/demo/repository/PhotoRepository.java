@@ -1,12 +1,92 @@
 package com.albumSystem.demo.repository;
 
+import com.albumSystem.demo.model.Blob;
 import com.albumSystem.demo.model.Photo;
+import com.albumSystem.demo.payload.album.PhotoSummaryDTO;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PhotoRepository extends JpaRepository<Photo,Long> {
     List<Photo> findByAlbum_Id(long id);
+
+    //loads the photo and proves ownership in one statement: primary key lookup joined to its album's owner
+    Optional<Photo> findByIdAndAlbum_IdAndAlbum_Account_Id(long id, long albumId, long accountId);
+
+    //keyset page of one album on the (album_id, id) index, pass PageRequest.of(0, n) so there is never an OFFSET
+    @Query("select new com.albumSystem.demo.payload.album.PhotoSummaryDTO(p.album.id, p.id, p.name, p.description, p.fileName) " +
+            "from Photo p where p.album.id = :albumId and p.id > :after order by p.id")
+    List<PhotoSummaryDTO> findSummariesByAlbumId(@Param("albumId") long albumId, @Param("after") long after, Pageable pageable);
+
+    //first `limit` photos of each album in one statement (album_id, id, name, description, file_name), grouped by the caller
+    @Query(value = "select r.album_id, r.id, r.name, r.description, r.file_name from (" +
+            "select p.album_id, p.id, p.name, p.description, p.file_name, " +
+            "row_number() over (partition by p.album_id order by p.id) as rn " +
+            "from photo p where p.album_id in (:albumIds)) r " +
+            "where r.rn <= :limit order by r.album_id, r.id", nativeQuery = true)
+    List<Object[]> findFirstSummariesByAlbumIds(@Param("albumIds") Collection<Long> albumIds, @Param("limit") int limit);
+
+    //set-based delete of every photo of an album; run in the caller's transaction
+    @Modifying
+    @Query("delete from Photo p where p.album.id = :albumId")
+    int deleteByAlbumId(@Param("albumId") long albumId);
+
+    //only touches the status column so a concurrent name/description update is not overwritten;
+    //every photo of the same content shares one thumbnail and therefore one status
+    @Transactional
+    @Modifying
+    @Query("update Photo p set p.thumbnailStatus = :status where p.blob.hash = :hash")
+    int updateThumbnailStatusByBlobHash(@Param("hash") String hash, @Param("status") ThumbnailStatus status);
+
+    //copies the blob's status onto photos inserted while another upload of the same content was generating its thumbnail
+    @Transactional
+    @Modifying
+    @Query("update Photo p set p.thumbnailStatus = (select b.thumbnailStatus from Blob b where b.hash = p.blob.hash) where p.id in :ids")
+    int syncThumbnailStatus(@Param("ids") Collection<Long> ids);
+
+    //photos still stored in the flat per-album folders, keyset paged by id
+    @Query("select p from Photo p where p.blob is null and p.id > :after order by p.id")
+    List<Photo> findLegacyPhotos(@Param("after") long after, Pageable pageable);
+
+    //which of the given names photos of the album that were not moved yet still use; the rest of the old folder is orphaned
+    @Query("select p.fileName from Photo p where p.album.id = :albumId and p.blob is null and p.fileName in :fileNames")
+    List<String> findLegacyFileNames(@Param("albumId") long albumId, @Param("fileNames") Collection<String> fileNames);
+
+    //points a migrated photo at its blob; 0 when the photo was deleted or migrated meanwhile
+    @Transactional
+    @Modifying
+    @Query("update Photo p set p.blob = :blob, p.fileName = :hash, p.thumbnailStatus = :status where p.id = :id and p.blob is null")
+    int moveToBlob(@Param("id") long id, @Param("blob") Blob blob, @Param("hash") String hash, @Param("status") ThumbnailStatus status);
+
+    //photos with a thumbnail to put on the album's contact sheet, in sheet order (id, file_name)
+    @Query("select p.id, p.fileName from Photo p where p.album.id = :albumId and p.blob is not null " +
+            "and p.thumbnailStatus = :status order by p.id")
+    List<Object[]> findSheetThumbnails(@Param("albumId") long albumId, @Param("status") ThumbnailStatus status, Pageable pageable);
+
+    //the requested photos of the album that belong to the account, in one statement: ids of other albums or owners are
+    //simply not returned (id, file_name, content_type, thumbnail_status, blob hash; the hash is null for old-layout photos)
+    @Query("select p.id, p.fileName, p.contentType, p.thumbnailStatus, b.hash from Photo p left join p.blob b " +
+            "where p.id in :ids and p.album.id = :albumId and p.album.account.id = :accountId")
+    List<Object[]> findOwnedThumbnails(@Param("ids") Collection<Long> ids, @Param("albumId") long albumId, @Param("accountId") long accountId);
+
+    //every photo of an album for the ZIP export, read as a cursor inside the caller's transaction
+    //(id, original_file_name, file_name, thumbnail_status, blob size, blob crc32; the blob columns are null for old-layout photos)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"))
+    @Query("select p.id, p.originalFileName, p.fileName, p.thumbnailStatus, b.size, b.crc32 " +
+            "from Photo p left join p.blob b where p.album.id = :albumId order by p.id")
+    Stream<Object[]> streamExportRows(@Param("albumId") long albumId);
 }
@@ -0,0 +1,29 @@
+package com.albumSystem.demo.repository;
+
+import com.albumSystem.demo.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession,String> {
+
+    //the session, its album and the album's owner in one statement
+    Optional<UploadSession> findByIdAndAlbum_IdAndAlbum_Account_Id(String id, long albumId, long accountId);
+
+    //run in the caller's transaction, before the album row goes
+    @Modifying
+    @Query("delete from UploadSession s where s.album.id = :albumId")
+    int deleteByAlbumId(@Param("albumId") long albumId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UploadSession s where s.updatedAt < :cutoff")
+    int deleteExpired(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -1,9 +1,16 @@
 package com.albumSystem.demo.service;
 
+import com.albumSystem.demo.Security.AccountPrincipal;
 import com.albumSystem.demo.model.Account;
 import com.albumSystem.demo.util.constants.Authority;
 import com.albumSystem.demo.repository.AccountRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
@@ -13,6 +20,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -28,13 +36,62 @@ public class AccountService implements UserDetailsService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${album.account.cache.max-size:10000}")
+    private long principalCacheMaxSize;
+
+    //bounds how long an authorities change made outside save() can go unnoticed
+    @Value("${album.account.cache.ttl-seconds:300}")
+    private long principalCacheTtlSeconds;
+
+    //account id -> principal, read on every authenticated request
+    private Cache<Long,AccountPrincipal> principals;
+
+    @PostConstruct
+    void init(){
+        principals=Caffeine.newBuilder()
+                .maximumSize(principalCacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(principalCacheTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry,principals,"accounts");
+    }
+
     public Account save(Account account){
         account.setPassword(passwordEncoder.encode(account.getPassword()));
         if(account.getAuthorities()==null){
             account.setAuthorities(Authority.USER.toString());
         }
 
-        return accountRepository.save(account);
+        Account saved=accountRepository.save(account);
+        principals.invalidate(saved.getId());
+        return saved;
+    }
+
+    //null when the account no longer exists; misses are not cached so a new account is visible immediately
+    public AccountPrincipal findPrincipalById(long id){
+        return principals.get(id,key -> accountRepository.findById(key).map(this::toPrincipal).orElse(null));
+    }
+
+    public AccountPrincipal findPrincipalByEmail(String email){
+        Optional<Account> optionalAccount=accountRepository.findByEmail(email);
+        if(!optionalAccount.isPresent()){
+            return null;
+        }
+        AccountPrincipal principal=toPrincipal(optionalAccount.get());
+        principals.put(principal.id(),principal);
+        return principal;
+    }
+
+    //a proxy carrying only the id, for setting the owner of a new row without selecting the account
+    public Account getReferenceById(long id){
+        return accountRepository.getReferenceById(id);
+    }
+
+    private AccountPrincipal toPrincipal(Account account){
+        return new AccountPrincipal(account.getId(),account.getEmail(),account.getAuthorities());
     }
 
     public List<Account>findall(){
@@ -52,6 +109,7 @@ public class AccountService implements UserDetailsService {
 
     public void deleteById(Long id){
         accountRepository.deleteById(id);
+        principals.invalidate(id);
     }
 
     @Override
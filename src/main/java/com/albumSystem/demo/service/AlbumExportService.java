@@ -0,0 +1,174 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.repository.PhotoRepository;
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+//streams an album as a ZIP straight into the response: one cursor over the album's photos, each file copied from the
+//store into its entry, no temp files. Photos are JPEG/PNG and already compressed, so every entry is STORED; the
+//size and CRC-32 a stored entry needs up front were recorded on the Blob at upload. Memory does not grow with the
+//album apart from the ZIP's central directory, a few dozen bytes per entry
+@Service
+@Slf4j
+public class AlbumExportService {
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private LegacyLayoutMigrator legacyLayoutMigrator;
+
+    //each running export holds a download thread and a database connection for its whole duration
+    @Value("${album.download.max-concurrent:4}")
+    private int maxConcurrent;
+
+    private Semaphore exports;
+    private TransactionTemplate readOnly;
+
+    @PostConstruct
+    void init(){
+        exports=new Semaphore(maxConcurrent);
+        readOnly=new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    //null when maxConcurrent exports are already running
+    public StreamingResponseBody export(long album_id,boolean thumbnails){
+        if(!exports.tryAcquire()){
+            return null;
+        }
+        return out -> {
+            try{
+                writeZip(album_id,thumbnails,out);
+            }finally {
+                exports.release();
+            }
+        };
+    }
+
+    private void writeZip(long album_id,boolean thumbnails,OutputStream out)throws IOException{
+        //the response stream is closed by the container, the archive is only finished here
+        ZipOutputStream zip=new ZipOutputStream(new BufferedOutputStream(out,64*1024));
+        try{
+            readOnly.executeWithoutResult(status -> {
+                try(Stream<Object[]> rows=photoRepository.streamExportRows(album_id)){
+                    Iterator<Object[]> iterator=rows.iterator();
+                    while(iterator.hasNext()){
+                        writePhoto(zip,album_id,iterator.next(),thumbnails);
+                    }
+                }catch (IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }catch (UncheckedIOException e){
+            //usually the client went away
+            throw e.getCause();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private void writePhoto(ZipOutputStream zip,long album_id,Object[] row,boolean thumbnails)throws IOException{
+        long photo_id=((Number) row[0]).longValue();
+        String fileName=(String) row[2];
+        String name=entryName(photo_id,(String) row[1],fileName);
+        boolean withThumbnail=thumbnails && row[3]==ThumbnailStatus.READY;
+        if(row[4]!=null){
+            long size=((Number) row[4]).longValue();
+            long crc=((Number) row[5]).longValue();
+            try{
+                putStored(zip,AppUtil.PHOTOS_FOLDER_NAME+"/"+name,size,crc,photoStorage.get(AppUtil.PHOTOS_FOLDER_NAME,fileName));
+            }catch (NoSuchFileException e){
+                log.debug("Export of album "+album_id+" skips missing photo "+photo_id);
+            }
+            if(withThumbnail){
+                putThumbnail(zip,name,() -> photoStorage.get(AppUtil.THUMBNAIL_FOLDER_NAME,fileName));
+            }
+            return;
+        }
+        //not moved out of the old layout yet: there is no recorded CRC, so it is computed in a first pass over the local file
+        Path original=legacyLayoutMigrator.legacyPath(album_id,AppUtil.PHOTOS_FOLDER_NAME,fileName);
+        if(Files.isRegularFile(original)){
+            putStored(zip,AppUtil.PHOTOS_FOLDER_NAME+"/"+name,Files.size(original),crcOf(original),Files.newInputStream(original));
+        }
+        Path thumbnail=legacyLayoutMigrator.legacyPath(album_id,AppUtil.THUMBNAIL_FOLDER_NAME,fileName);
+        if(withThumbnail && Files.isRegularFile(thumbnail)){
+            putThumbnail(zip,name,() -> Files.newInputStream(thumbnail));
+        }
+    }
+
+    private interface Opener {
+        InputStream open()throws IOException;
+    }
+
+    //thumbnails are a few KB and have no recorded CRC, they are read into memory once
+    private void putThumbnail(ZipOutputStream zip,String name,Opener opener)throws IOException{
+        byte[] bytes;
+        try(InputStream in=opener.open()){
+            bytes=in.readAllBytes();
+        }catch (NoSuchFileException e){
+            return;
+        }
+        CRC32 crc=new CRC32();
+        crc.update(bytes);
+        putStored(zip,AppUtil.THUMBNAIL_FOLDER_NAME+"/"+name,bytes.length,crc.getValue(),new ByteArrayInputStream(bytes));
+    }
+
+    //the stream is opened by the caller before the entry is started, so a missing file never leaves half an entry
+    private void putStored(ZipOutputStream zip,String name,long size,long crc,InputStream content)throws IOException{
+        try(InputStream in=content){
+            ZipEntry entry=new ZipEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            entry.setCrc(crc);
+            zip.putNextEntry(entry);
+            in.transferTo(zip);
+            zip.closeEntry();
+        }
+    }
+
+    private long crcOf(Path file)throws IOException{
+        CRC32 crc=new CRC32();
+        try(InputStream in=Files.newInputStream(file)){
+            byte[] buffer=new byte[64*1024];
+            int read;
+            while((read=in.read(buffer))>0){
+                crc.update(buffer,0,read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    //the photo id keeps names unique when two photos were uploaded under the same name
+    private String entryName(long photo_id,String originalFileName,String fileName){
+        String name=originalFileName!=null ? originalFileName : fileName;
+        return photo_id+"_"+name.replace('/','_').replace('\\','_');
+    }
+}
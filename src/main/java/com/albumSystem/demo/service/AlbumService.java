@@ -1,33 +1,106 @@
 package com.albumSystem.demo.service;
 
+import com.albumSystem.demo.payload.album.AlbumViewDTO;
+import com.albumSystem.demo.payload.album.CursorPageDTO;
+import com.albumSystem.demo.payload.album.PhotoSummaryDTO;
 import com.albumSystem.demo.repository.AlbumRepository;
+import com.albumSystem.demo.repository.BlobRepository;
+import com.albumSystem.demo.repository.PhotoRepository;
+import com.albumSystem.demo.repository.UploadSessionRepository;
 import com.albumSystem.demo.model.Album;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class AlbumService {
 
+    //hashes per IN list when the released blob rows are deleted
+    private static final int DELETE_BATCH_SIZE=500;
+
     @Autowired
     private AlbumRepository albumRepository;
 
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
     public Album save(Album album){
         return albumRepository.save(album);
     }
 
+    //empty when the album does not exist or belongs to another account
+    public Optional<Album> findOwnedAlbum(long album_id,long account_id){
+        return albumRepository.findByIdAndAccount_Id(album_id,account_id);
+    }
+
     public List<Album>findByAccount_id(long id){
         return albumRepository.findByAccount_Id(id);
     }
 
+    //one keyset page of albums in two statements however big the page is: the albums, then the first page of photos
+    //of every one of them with a single windowed IN query
+    public CursorPageDTO<AlbumViewDTO> findViewsByAccountId(long account_id,long cursor,Integer size){
+        int pageSize=AppUtil.getPageSize(size);
+        List<AlbumViewDTO> albums=albumRepository.findViewsByAccountId(account_id,cursor,PageRequest.of(0,pageSize+1));
+        Long next=null;
+        if(albums.size()>pageSize){
+            albums=new ArrayList<>(albums.subList(0,pageSize));
+            next=albums.get(pageSize-1).getId();
+        }
+        if(albums.isEmpty()){
+            return new CursorPageDTO<>(albums,null);
+        }
+        Map<Long,AlbumViewDTO> albumsById=new HashMap<>();
+        for(AlbumViewDTO album:albums){
+            albumsById.put(album.getId(),album);
+        }
+        for(Object[] row:photoRepository.findFirstSummariesByAlbumIds(albumsById.keySet(),pageSize+1)){
+            PhotoSummaryDTO photo=new PhotoSummaryDTO(((Number) row[0]).longValue(),((Number) row[1]).longValue(),
+                    (String) row[2],(String) row[3],(String) row[4]);
+            AlbumViewDTO album=albumsById.get(photo.getAlbumId());
+            //the extra row only tells us there is another page
+            if(album.getPhotos().size()<pageSize){
+                album.getPhotos().add(photo.toPhotoDTO());
+            }else{
+                album.setPhotos_next(album.getPhotos().get(pageSize-1).getId());
+            }
+        }
+        return new CursorPageDTO<>(albums,next);
+    }
+
     public Optional<Album>findById(long id){
         return albumRepository.findById(id);
     }
 
-    public void deleteAlbum(Album album){
-        albumRepository.delete(album);
+    //a handful of set-based statements in one transaction whatever the album size. Returns the hashes of content
+    //no photo references any more; their files are removed afterwards by StorageCleaner. Only blobs this album released
+    //are looked at, zero-count rows of other albums belong to the photo delete or upload handling them under their lock
+    @Transactional
+    public List<String> deleteAlbum(long album_id){
+        blobRepository.releaseAlbum(album_id);
+        List<String> unreferenced=blobRepository.findUnreferencedHashesOfAlbum(album_id);
+        photoRepository.deleteByAlbumId(album_id);
+        //unfinished uploads go with the album, their files expire with the other stale sessions
+        uploadSessionRepository.deleteByAlbumId(album_id);
+        albumRepository.deleteAlbumById(album_id);
+        for(int i=0;i<unreferenced.size();i+=DELETE_BATCH_SIZE){
+            blobRepository.deleteUnreferenced(unreferenced.subList(i,Math.min(i+DELETE_BATCH_SIZE,unreferenced.size())));
+        }
+        return unreferenced;
     }
 }
 
@@ -0,0 +1,157 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.model.Blob;
+import com.albumSystem.demo.repository.BlobRepository;
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+//content-addressed store: an upload is hashed while it is copied to a temp file, then either handed to the
+//PhotoStorage under its hash or dropped because that content is already stored. Reference counts live in the Blob row
+@Service
+public class BlobService {
+
+    private static final int LOCK_STRIPES=64;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    //serializes placing, counting and deleting the same content within this instance; different hashes rarely share a stripe
+    private final ReentrantLock[] locks=new ReentrantLock[LOCK_STRIPES];
+
+    public BlobService(){
+        for(int i=0;i<locks.length;i++){
+            locks[i]=new ReentrantLock();
+        }
+    }
+
+    public record ReceivedFile(Path temp,String hash,long size,long crc32){}
+
+    public ReentrantLock lockFor(String hash){
+        return locks[Math.floorMod(hash.hashCode(),locks.length)];
+    }
+
+    //copies the upload to the storage's temp folder in one pass, computing SHA-256 and CRC-32 on the way
+    public ReceivedFile receive(MultipartFile file)throws IOException{
+        Path temp=Files.createTempFile(photoStorage.tempFolder(),"upload-",".part");
+        try(InputStream in=file.getInputStream();OutputStream out=Files.newOutputStream(temp)){
+            return digest(temp,in,out);
+        }catch (IOException e){
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    //same as receive() for a file already on this disk: the temp file is a hard link to it, so nothing is copied
+    //and the original stays where it is until the caller deletes it
+    public ReceivedFile receiveExisting(Path file)throws IOException{
+        Path temp=linkToTemp(file);
+        try(InputStream in=Files.newInputStream(temp)){
+            return digest(temp,in,OutputStream.nullOutputStream());
+        }catch (IOException e){
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    //for a file on this disk whose SHA-256 and CRC-32 the caller computed while it was written, e.g. an upload session
+    public ReceivedFile receiveHashed(Path file,String hash,long size,long crc32)throws IOException{
+        return new ReceivedFile(linkToTemp(file),hash,size,crc32);
+    }
+
+    static MessageDigest sha256(){
+        try{
+            return MessageDigest.getInstance("SHA-256");
+        }catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ReceivedFile digest(Path temp,InputStream in,OutputStream out)throws IOException{
+        MessageDigest sha256=sha256();
+        CRC32 crc32=new CRC32();
+        long size=0;
+        byte[] buffer=new byte[64*1024];
+        int read;
+        while((read=in.read(buffer))>0){
+            sha256.update(buffer,0,read);
+            crc32.update(buffer,0,read);
+            out.write(buffer,0,read);
+            size+=read;
+        }
+        return new ReceivedFile(temp,HexFormat.of().formatHex(sha256.digest()),size,crc32.getValue());
+    }
+
+    //a temp folder on another file system (s3 storage) cannot hold links, the file is copied there instead
+    private Path linkToTemp(Path file)throws IOException{
+        Path temp=Files.createTempFile(photoStorage.tempFolder(),"existing-",".part");
+        Files.delete(temp);
+        try{
+            Files.createLink(temp,file);
+        }catch (UnsupportedOperationException|FileSystemException e){
+            Files.copy(file,temp,StandardCopyOption.REPLACE_EXISTING);
+        }
+        return temp;
+    }
+
+    public Optional<Blob> findByHash(String hash){
+        return blobRepository.findById(hash);
+    }
+
+    //moves the received file into place unless the content is already stored, then counts one more reference.
+    //the caller holds lockFor(hash) so the StorageCleaner cannot remove the file in between
+    @Transactional
+    public Blob acquire(ReceivedFile received,String contentType)throws IOException{
+        if(photoStorage.exists(AppUtil.PHOTOS_FOLDER_NAME,received.hash())){
+            Files.deleteIfExists(received.temp());
+        }else{
+            photoStorage.put(AppUtil.PHOTOS_FOLDER_NAME,received.hash(),received.temp());
+        }
+        //a row deleted by a concurrent release is simply inserted again; the cleaner checks for it before deleting files
+        if(blobRepository.incrementRefCount(received.hash())>0){
+            return blobRepository.findById(received.hash()).get();
+        }
+        Blob blob=new Blob(received.hash(),received.size(),contentType,received.crc32(),1,ThumbnailStatus.PENDING,System.currentTimeMillis());
+        return blobRepository.save(blob);
+    }
+
+    //stores a thumbnail made elsewhere (the old per-album layout) for this content and marks it ready;
+    //the caller holds lockFor(hash) and has acquired the blob
+    public void adoptThumbnail(String hash,Path thumbnail)throws IOException{
+        photoStorage.put(AppUtil.THUMBNAIL_FOLDER_NAME,hash,linkToTemp(thumbnail));
+        blobRepository.updateThumbnailStatus(hash,ThumbnailStatus.READY);
+    }
+
+    //lets the next upload of this content try the thumbnail again
+    public void retryThumbnail(String hash){
+        blobRepository.markThumbnailPending(hash,System.currentTimeMillis());
+    }
+
+    //drops one reference; true when it was the last one and the row is gone, the caller then hands the files to StorageCleaner
+    @Transactional
+    public boolean release(String hash){
+        blobRepository.decrementRefCount(hash);
+        return blobRepository.deleteIfUnreferenced(hash)>0;
+    }
+}
@@ -0,0 +1,323 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.model.ContactSheet;
+import com.albumSystem.demo.payload.album.ContactSheetDTO;
+import com.albumSystem.demo.payload.album.ContactSheetTileDTO;
+import com.albumSystem.demo.repository.ContactSheetRepository;
+import com.albumSystem.demo.repository.PhotoRepository;
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.AppUtils.ImageHeader;
+import com.albumSystem.demo.util.AppUtils.SingleFlight;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+//one JPEG with the thumbnails of an album's first photos in a grid, plus the map of where each one is, so a gallery
+//renders from two requests. The sheet is brought up to date when it is asked for: photos added after it was drawn are
+//drawn onto the stored lossless canvas, anything else (a deleted photo, a thumbnail that became ready out of order)
+//redraws it from scratch. A redraw only saves its row if the album's tiles are still the ones it drew, checked under
+//the same per-album lock invalidate() takes, so a photo deleted during a redraw never brings the stale sheet back
+@Service
+@Slf4j
+public class ContactSheetService {
+
+    static final String SHEET_FOLDER_NAME="contact-sheets";
+    static final String CANVAS_FOLDER_NAME="contact-sheet-canvases";
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private ContactSheetRepository contactSheetRepository;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private ImageMemoryBudget imageMemoryBudget;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${album.contact-sheet.max-photos:200}")
+    private int maxPhotos;
+
+    @Value("${album.contact-sheet.tile:150}")
+    private int tile;
+
+    @Value("${album.contact-sheet.columns:10}")
+    private int columns;
+
+    private static final int LOCK_STRIPES=16;
+    //redraws that lose to invalidate() this often in a row give up and serve what they drew without saving it
+    private static final int MAX_DRAW_ATTEMPTS=3;
+
+    //viewers opening the same album at once wait for one redraw
+    private SingleFlight<Long,Optional<ContactSheet>> draws;
+
+    //serializes invalidate() with the check-and-save that ends a redraw
+    private final ReentrantLock[] locks=new ReentrantLock[LOCK_STRIPES];
+
+    public ContactSheetService(){
+        for(int i=0;i<locks.length;i++){
+            locks[i]=new ReentrantLock();
+        }
+    }
+
+    private ReentrantLock lockFor(long album_id){
+        return locks[Math.floorMod(Long.hashCode(album_id),locks.length)];
+    }
+
+    @PostConstruct
+    void init(){
+        draws=new SingleFlight<>("contact-sheets",meterRegistry);
+    }
+
+    record Tile(long id,int width,int height){}
+
+    //empty when no photo of the album has a thumbnail yet; throws DecodeBudgetExceededException when a redraw
+    //could not get memory
+    public Optional<ContactSheet> current(long album_id)throws IOException{
+        List<Object[]> ready=photoRepository.findSheetThumbnails(album_id,ThumbnailStatus.READY,PageRequest.of(0,maxPhotos));
+        if(ready.isEmpty()){
+            return Optional.empty();
+        }
+        Optional<ContactSheet> sheet=contactSheetRepository.findById(album_id);
+        if(sheet.isPresent()){
+            List<Tile> tiles=parseTiles(sheet.get().getTiles());
+            if(tiles.size()==ready.size() && isPrefix(tiles,ready)){
+                return sheet;
+            }
+        }
+        return draws.execute(album_id,() -> redraw(album_id,sheet.orElse(null),ready));
+    }
+
+    //draws until the tiles drawn are still the album's ready thumbnails when the row is saved
+    private Optional<ContactSheet> redraw(long album_id,ContactSheet previous,List<Object[]> ready)throws IOException{
+        for(int attempt=1;;attempt++){
+            Drawn drawn=draw(album_id,previous,ready);
+            ReentrantLock lock=lockFor(album_id);
+            lock.lock();
+            try{
+                List<Object[]> now=photoRepository.findSheetThumbnails(album_id,ThumbnailStatus.READY,PageRequest.of(0,maxPhotos));
+                if(sameIds(now,ready)){
+                    return Optional.of(contactSheetRepository.save(drawn.sheet()));
+                }
+                if(now.isEmpty()){
+                    return Optional.empty();
+                }
+                if(attempt>=MAX_DRAW_ATTEMPTS){
+                    return Optional.of(drawn.sheet());
+                }
+                //drawn from scratch again: the stored canvas may be the one just drawn or already deleted
+                previous=null;
+                ready=now;
+            }finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    //throws NoSuchFileException when the sheet was dropped meanwhile
+    public PhotoStorage.StoredObject stat(ContactSheet sheet)throws IOException{
+        return photoStorage.stat(SHEET_FOLDER_NAME,sheetKey(sheet.getAlbumId()));
+    }
+
+    public String etag(ContactSheet sheet){
+        return AppUtil.getFileETag(SHEET_FOLDER_NAME,sheet.getAlbumId()+"/"+sheet.getVersion());
+    }
+
+    public ContactSheetDTO toView(ContactSheet sheet){
+        List<Tile> tiles=parseTiles(sheet.getTiles());
+        List<ContactSheetTileDTO> views=new ArrayList<>(tiles.size());
+        for(int i=0;i<tiles.size();i++){
+            Tile tile=tiles.get(i);
+            views.add(new ContactSheetTileDTO(tile.id(),cellX(i)+(this.tile-tile.width())/2,cellY(i)+(this.tile-tile.height())/2,
+                    tile.width(),tile.height()));
+        }
+        return new ContactSheetDTO(sheet.getVersion(),tile,columns,columns*tile,rows(tiles.size())*tile,views);
+    }
+
+    //a photo of the album was deleted or the album is gone; the next view redraws the sheet
+    public void invalidate(long album_id){
+        ReentrantLock lock=lockFor(album_id);
+        lock.lock();
+        try{
+            contactSheetRepository.deleteByAlbumId(album_id);
+            String key=sheetKey(album_id);
+            try{
+                photoStorage.delete(SHEET_FOLDER_NAME,key);
+                photoStorage.delete(CANVAS_FOLDER_NAME,key);
+            }catch (IOException e){
+                //overwritten by the next redraw
+                log.debug("Deleting contact sheet of album "+album_id+" failed: "+e.getMessage());
+            }
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    //a redrawn sheet whose files are stored and whose row is not saved yet
+    private record Drawn(ContactSheet sheet){}
+
+    private Drawn draw(long album_id,ContactSheet previous,List<Object[]> ready)throws IOException{
+        String key=sheetKey(album_id);
+        List<Tile> tiles=previous!=null ? parseTiles(previous.getTiles()) : new ArrayList<>();
+        boolean append=!tiles.isEmpty() && tiles.size()<ready.size() && isPrefix(tiles,ready);
+        if(!append){
+            tiles=new ArrayList<>();
+        }
+        int width=columns*tile;
+        int height=rows(ready.size())*tile;
+        //the new canvas, the stored one it grows from and one decoded thumbnail at a time
+        long bytes=2L*width*height*4+2L*AppUtil.THUMBNAIL_WIDTH*AppUtil.THUMBNAIL_WIDTH*4;
+        BufferedImage canvas;
+        try(ImageMemoryBudget.Reservation reservation=imageMemoryBudget.reserve(new ImageHeader(width,height,4),bytes)){
+            canvas=new BufferedImage(width,height,BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics=canvas.createGraphics();
+            try{
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0,0,width,height);
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                if(append){
+                    BufferedImage stored=readCanvas(key);
+                    if(stored!=null){
+                        graphics.drawImage(stored,0,0,null);
+                    }else{
+                        tiles=new ArrayList<>();
+                    }
+                }
+                for(int i=tiles.size();i<ready.size();i++){
+                    tiles.add(drawTile(graphics,i,((Number) ready.get(i)[0]).longValue(),(String) ready.get(i)[1]));
+                }
+            }finally {
+                graphics.dispose();
+            }
+        }
+
+        //the PNG keeps later appends lossless, clients get the JPEG
+        Path canvasFile=Files.createTempFile(photoStorage.tempFolder(),"sheet-",".part");
+        Path sheetFile=Files.createTempFile(photoStorage.tempFolder(),"sheet-",".part");
+        try{
+            if(!ImageIO.write(canvas,"png",canvasFile.toFile()) || !ImageIO.write(canvas,"jpg",sheetFile.toFile())){
+                throw new IOException("No image writer for the contact sheet");
+            }
+            photoStorage.put(CANVAS_FOLDER_NAME,key,canvasFile);
+            photoStorage.put(SHEET_FOLDER_NAME,key,sheetFile);
+        }finally {
+            Files.deleteIfExists(canvasFile);
+            Files.deleteIfExists(sheetFile);
+        }
+        //a timestamp rather than a counter, so a sheet drawn again after invalidate never reuses an ETag
+        long version=Math.max(System.currentTimeMillis(),previous!=null ? previous.getVersion()+1 : 0);
+        return new Drawn(new ContactSheet(album_id,version,formatTiles(tiles)));
+    }
+
+    //scaled into its cell and centered; a thumbnail that cannot be read leaves the cell blank
+    private Tile drawTile(Graphics2D graphics,int index,long photo_id,String hash){
+        BufferedImage thumbnail;
+        try(InputStream in=photoStorage.get(AppUtil.THUMBNAIL_FOLDER_NAME,hash)){
+            thumbnail=ImageIO.read(in);
+        }catch (IOException e){
+            thumbnail=null;
+        }
+        if(thumbnail==null){
+            return new Tile(photo_id,0,0);
+        }
+        double scale=Math.min(1.0,Math.min((double) tile/thumbnail.getWidth(),(double) tile/thumbnail.getHeight()));
+        int width=Math.max(1,(int) Math.round(thumbnail.getWidth()*scale));
+        int height=Math.max(1,(int) Math.round(thumbnail.getHeight()*scale));
+        graphics.drawImage(thumbnail,cellX(index)+(tile-width)/2,cellY(index)+(tile-height)/2,width,height,null);
+        return new Tile(photo_id,width,height);
+    }
+
+    private BufferedImage readCanvas(String key)throws IOException{
+        try(InputStream in=photoStorage.get(CANVAS_FOLDER_NAME,key)){
+            return ImageIO.read(in);
+        }catch (NoSuchFileException e){
+            return null;
+        }
+    }
+
+    private int cellX(int index){
+        return (index%columns)*tile;
+    }
+
+    private int cellY(int index){
+        return (index/columns)*tile;
+    }
+
+    private int rows(int count){
+        return (count+columns-1)/columns;
+    }
+
+    //spread over the shard folders like content hashes
+    private static String sheetKey(long album_id){
+        return DigestUtils.md5DigestAsHex(("album/"+album_id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean sameIds(List<Object[]> rows,List<Object[]> ready){
+        if(rows.size()!=ready.size()){
+            return false;
+        }
+        for(int i=0;i<rows.size();i++){
+            if(((Number) rows.get(i)[0]).longValue()!=((Number) ready.get(i)[0]).longValue()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+        private static boolean isPrefix(List<Tile> tiles,List<Object[]> ready){
+        for(int i=0;i<tiles.size();i++){
+            if(tiles.get(i).id()!=((Number) ready.get(i)[0]).longValue()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Tile> parseTiles(String tiles){
+        List<Tile> parsed=new ArrayList<>();
+        if(tiles==null || tiles.isEmpty()){
+            return parsed;
+        }
+        for(String tile:tiles.split(",")){
+            String[] parts=tile.split(":");
+            parsed.add(new Tile(Long.parseLong(parts[0]),Integer.parseInt(parts[1]),Integer.parseInt(parts[2])));
+        }
+        return parsed;
+    }
+
+    private static String formatTiles(List<Tile> tiles){
+        StringBuilder builder=new StringBuilder();
+        for(Tile tile:tiles){
+            if(builder.length()>0){
+                builder.append(',');
+            }
+            builder.append(tile.id()).append(':').append(tile.width()).append(':').append(tile.height());
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,227 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+//writes a stored object straight to the servlet response with Range/206 support.
+//for local files single ranges and full bodies are handed to Tomcat's sendfile, so the bytes never pass through the heap;
+//remote objects are streamed range by range from the PhotoStorage
+@Service
+public class FileDownloadService {
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    //keyed by folder/hash; a cold photo opened by many clients at once is looked up once (a HEAD request on s3)
+    private SingleFlight<String,PhotoStorage.StoredObject> stats;
+
+    @PostConstruct
+    void init(){
+        stats=new SingleFlight<>("stats",meterRegistry);
+    }
+
+    //throws NoSuchFileException when the object is not stored
+    public PhotoStorage.StoredObject stat(String folder,String hash)throws IOException{
+        return stats.execute(folder+"/"+hash,() -> photoStorage.stat(folder,hash));
+    }
+
+    //request attributes understood by Tomcat's NIO/NIO2 connectors (see DefaultServlet)
+    private static final String SENDFILE_SUPPORTED="org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME="org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START="org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END="org.apache.tomcat.sendfile.end";
+
+    //etag and lastModified are the validators already sent with the response, used to evaluate If-Range
+    public void write(HttpServletRequest request,HttpServletResponse response,PhotoStorage.StoredObject stored,
+                      MediaType contentType,String contentDisposition,String etag,long lastModified)throws IOException{
+        long length=stored.size();
+        response.setHeader(HttpHeaders.ACCEPT_RANGES,"bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,contentDisposition);
+
+        List<HttpRange> ranges;
+        try{
+            ranges=ifRangeMatches(request,etag,lastModified)
+                    ? HttpRange.parseRanges(request.getHeader(HttpHeaders.RANGE))
+                    : List.of();
+            long requested=0;
+            for(HttpRange range:ranges){
+                //throws for a start beyond the end of the file
+                requested+=range.getRangeEnd(length)-range.getRangeStart(length)+1;
+            }
+            //same guard Spring applies to Resource bodies: overlapping ranges may not ask for more than the whole file
+            if(requested>length && ranges.size()>1){
+                throw new IllegalArgumentException("Requested ranges exceed the file length");
+            }
+        }catch (IllegalArgumentException e){
+            response.setHeader(HttpHeaders.CONTENT_RANGE,"bytes */"+length);
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return;
+        }
+        boolean head=HttpMethod.HEAD.matches(request.getMethod());
+
+        if(ranges.isEmpty()){
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(contentType.toString());
+            response.setContentLengthLong(length);
+            if(!head){
+                sendRegion(request,response,stored,0,length);
+            }
+            return;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        if(ranges.size()==1){
+            long start=ranges.get(0).getRangeStart(length);
+            long end=ranges.get(0).getRangeEnd(length);
+            response.setContentType(contentType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE,"bytes "+start+"-"+end+"/"+length);
+            response.setContentLengthLong(end-start+1);
+            if(!head){
+                sendRegion(request,response,stored,start,end-start+1);
+            }
+            return;
+        }
+
+        //multipart/byteranges, the length is known up front so the response is not chunked
+        String boundary=MimeTypeUtils.generateMultipartBoundaryString();
+        byte[][] partHeaders=new byte[ranges.size()][];
+        long contentLength=0;
+        for(int i=0;i<ranges.size();i++){
+            long start=ranges.get(i).getRangeStart(length);
+            long end=ranges.get(i).getRangeEnd(length);
+            partHeaders[i]=("\r\n--"+boundary+"\r\n"
+                    +HttpHeaders.CONTENT_TYPE+": "+contentType+"\r\n"
+                    +HttpHeaders.CONTENT_RANGE+": bytes "+start+"-"+end+"/"+length+"\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            contentLength+=partHeaders[i].length+(end-start+1);
+        }
+        byte[] closing=("\r\n--"+boundary+"--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength+=closing.length;
+
+        response.setContentType("multipart/byteranges; boundary="+boundary);
+        response.setContentLengthLong(contentLength);
+        if(head){
+            return;
+        }
+        OutputStream out=response.getOutputStream();
+        if(stored.localPath()!=null){
+            WritableByteChannel target=Channels.newChannel(out);
+            try(FileChannel channel=FileChannel.open(stored.localPath(),StandardOpenOption.READ)){
+                for(int i=0;i<ranges.size();i++){
+                    long start=ranges.get(i).getRangeStart(length);
+                    long end=ranges.get(i).getRangeEnd(length);
+                    out.write(partHeaders[i]);
+                    transfer(channel,start,end-start+1,target);
+                }
+            }
+        }else{
+            for(int i=0;i<ranges.size();i++){
+                long start=ranges.get(i).getRangeStart(length);
+                long end=ranges.get(i).getRangeEnd(length);
+                out.write(partHeaders[i]);
+                try(InputStream in=photoStorage.getRange(stored.folder(),stored.hash(),start,end-start+1)){
+                    in.transferTo(out);
+                }
+            }
+        }
+        out.write(closing);
+        out.flush();
+    }
+
+    //full body from bytes already in memory (the thumbnail cache); range requests go through write() instead
+    public void writeBuffer(HttpServletRequest request,HttpServletResponse response,ByteBuffer bytes,
+                            MediaType contentType,String contentDisposition)throws IOException{
+        response.setHeader(HttpHeaders.ACCEPT_RANGES,"bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,contentDisposition);
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(contentType.toString());
+        response.setContentLength(bytes.remaining());
+        if(HttpMethod.HEAD.matches(request.getMethod())){
+            return;
+        }
+        WritableByteChannel target=Channels.newChannel(response.getOutputStream());
+        while(bytes.hasRemaining()){
+            target.write(bytes);
+        }
+        response.flushBuffer();
+    }
+
+    //a stale If-Range means the client's partial copy is of another version, so the full body is sent instead
+    private boolean ifRangeMatches(HttpServletRequest request,String etag,long lastModified){
+        String ifRange=request.getHeader(HttpHeaders.IF_RANGE);
+        if(ifRange==null){
+            return true;
+        }
+        if(ifRange.startsWith("\"")){
+            return ifRange.equals(etag);
+        }
+        try{
+            long since=request.getDateHeader(HttpHeaders.IF_RANGE);
+            return since!=-1 && lastModified/1000==since/1000;
+        }catch (IllegalArgumentException e){
+            return false;
+        }
+    }
+
+    private void sendRegion(HttpServletRequest request,HttpServletResponse response,PhotoStorage.StoredObject stored,
+                            long start,long count)throws IOException{
+        Path file=stored.localPath();
+        if(file==null){
+            try(InputStream in=photoStorage.getRange(stored.folder(),stored.hash(),start,count)){
+                in.transferTo(response.getOutputStream());
+            }
+            response.flushBuffer();
+            return;
+        }
+        if(Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))){
+            //the connector sends the region with sendfile once the handler returns; nothing may be written to the body
+            request.setAttribute(SENDFILE_FILENAME,file.toRealPath().toString());
+            request.setAttribute(SENDFILE_START,start);
+            request.setAttribute(SENDFILE_END,start+count);
+            return;
+        }
+        WritableByteChannel target=Channels.newChannel(response.getOutputStream());
+        try(FileChannel channel=FileChannel.open(file,StandardOpenOption.READ)){
+            transfer(channel,start,count,target);
+        }
+        response.flushBuffer();
+    }
+
+    void transfer(FileChannel channel,long position,long count,WritableByteChannel target)throws IOException{
+        while(count>0){
+            long sent=channel.transferTo(position,count,target);
+            if(sent<=0){
+                throw new IOException("File ended before the requested range was sent");
+            }
+            position+=sent;
+            count-=sent;
+        }
+    }
+}
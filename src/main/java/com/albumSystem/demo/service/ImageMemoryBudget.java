@@ -0,0 +1,81 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.exception.DecodeBudgetExceededException;
+import com.albumSystem.demo.exception.ImageTooLargeException;
+import com.albumSystem.demo.util.AppUtils.ImageHeader;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//admission control in front of image decoding: a decode may only start once the heap it will need has been reserved
+@Service
+public class ImageMemoryBudget {
+
+    @Value("${album.image.decode-budget-mb:512}")
+    private long decodeBudgetMb;
+
+    @Value("${album.image.max-pixels:100000000}")
+    private long maxPixels;
+
+    @Value("${album.image.decode-wait-ms:2000}")
+    private long decodeWaitMs;
+
+    //permits are KiB so the budget fits into a Semaphore
+    private Semaphore budget;
+    private int totalKb;
+
+    @PostConstruct
+    void init(){
+        totalKb=(int) Math.min(Integer.MAX_VALUE,decodeBudgetMb*1024);
+        budget=new Semaphore(totalKb,true);
+    }
+
+    public Reservation reserve(ImageHeader header)throws ImageTooLargeException,DecodeBudgetExceededException{
+        return reserve(header,header.decodedBytes());
+    }
+
+    //the pixel limit always applies to the full image, bytes is what the chosen decode path will actually allocate
+    public Reservation reserve(ImageHeader header,long bytes)throws ImageTooLargeException,DecodeBudgetExceededException{
+        if(header.getWidth()<=0 || header.getHeight()<=0 || header.pixels()>maxPixels){
+            throw new ImageTooLargeException("Refusing to decode "+header.getWidth()+"x"+header.getHeight()+" image");
+        }
+        long kb=(bytes+1023)/1024;
+        if(kb>totalKb){
+            throw new ImageTooLargeException("Decoding needs "+kb+"KB, budget is "+totalKb+"KB");
+        }
+        try{
+            if(!budget.tryAcquire((int) kb,decodeWaitMs,TimeUnit.MILLISECONDS)){
+                throw new DecodeBudgetExceededException("No decode budget for "+kb+"KB after "+decodeWaitMs+"ms");
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new DecodeBudgetExceededException("Interrupted while waiting for decode budget");
+        }
+        return new Reservation((int) kb);
+    }
+
+    public int availableKb(){
+        return budget.availablePermits();
+    }
+
+    //released by whoever finishes the decode; closing twice is harmless
+    public class Reservation implements AutoCloseable {
+        private final int kb;
+        private final AtomicBoolean released=new AtomicBoolean(false);
+
+        private Reservation(int kb){
+            this.kb=kb;
+        }
+
+        @Override
+        public void close(){
+            if(released.compareAndSet(false,true)){
+                budget.release(kb);
+            }
+        }
+    }
+}
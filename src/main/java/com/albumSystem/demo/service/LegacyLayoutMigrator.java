@@ -0,0 +1,325 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.exception.DecodeBudgetExceededException;
+import com.albumSystem.demo.model.Blob;
+import com.albumSystem.demo.model.Photo;
+import com.albumSystem.demo.repository.PhotoRepository;
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.AppUtils.ImageHeader;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+//moves photos out of the old flat uploads/{album_id}/photos|thumbnails folders into the sharded content-addressed
+//store, a batch per run while the application keeps serving. A photo is switched over by one row update: until then
+//it is read from its old place, afterwards from the store, and only then are the old files unlinked.
+//Files are hashed where they are and hard linked into place, so nothing is copied on a local store.
+//The old folders are always on this machine's disk under album.migration.legacy-root, whatever the storage backend;
+//with s3 storage they must be mounted there until the migration has moved everything
+@Service
+@Slf4j
+public class LegacyLayoutMigrator {
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private StorageCleaner storageCleaner;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private ImageMemoryBudget imageMemoryBudget;
+
+    @Autowired
+    @Qualifier("storageScheduler")
+    private ThreadPoolTaskScheduler storageScheduler;
+
+    @Value("${album.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${album.migration.batch-size:100}")
+    private int batchSize;
+
+    @Value("${album.migration.legacy-root:src/main/resources/static/uploads/}")
+    private String legacyRoot;
+
+    @Value("${album.cleanup.max-attempts:5}")
+    private int maxAttempts;
+
+    //doubled after every failed attempt
+    @Value("${album.cleanup.retry-delay-ms:2000}")
+    private long retryDelayMs;
+
+    //last photo id handled, the next run continues after it and wraps to the start once a pass is done
+    private long after;
+
+    @Scheduled(fixedDelayString = "${album.migration.interval-ms:10000}",initialDelayString = "${album.migration.interval-ms:10000}")
+    public void run(){
+        if(!enabled){
+            return;
+        }
+        int migrated=migrateNextBatch();
+        if(migrated>0){
+            log.info("Moved "+migrated+" photos to the sharded layout");
+        }
+    }
+
+    public int migrateNextBatch(){
+        List<Photo> photos=photoRepository.findLegacyPhotos(after,PageRequest.of(0,batchSize));
+        if(photos.size()<batchSize){
+            after=0;
+        }
+        int migrated=0;
+        for(Photo photo:photos){
+            if(photos.size()==batchSize){
+                after=photo.getId();
+            }
+            try{
+                if(migrate(photo)){
+                    migrated++;
+                }
+            }catch (DecodeBudgetExceededException e){
+                //uploads come first, the photo is picked up again on the next pass
+                log.debug("Photo "+photo.getId()+" left for a later pass: "+e.getMessage());
+            }catch (IOException|RuntimeException e){
+                log.warn("Moving photo "+photo.getId()+" failed: "+e.getMessage());
+            }
+        }
+        return migrated;
+    }
+
+    //false when the old file is missing or the photo was deleted meanwhile
+    boolean migrate(Photo photo)throws IOException{
+        long album_id=photo.getAlbum().getId();
+        Path original=legacyPath(album_id,AppUtil.PHOTOS_FOLDER_NAME,photo.getFileName());
+        Path thumbnail=legacyPath(album_id,AppUtil.THUMBNAIL_FOLDER_NAME,photo.getFileName());
+        if(!Files.isRegularFile(original)){
+            return false;
+        }
+        String contentType=photo.getContentType()!=null
+                ? photo.getContentType()
+                : MediaTypeFactory.getMediaType(photo.getFileName()).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+
+        BlobService.ReceivedFile received=blobService.receiveExisting(original);
+        String hash=received.hash();
+        ImageMemoryBudget.Reservation reservation=null;
+        ThumbnailStatus status=null;
+        Blob blob=null;
+        boolean updated;
+        try{
+            //as in PhotoUploadService.stage, decode memory is reserved before the stripe lock is taken, never while
+            //holding it; a decode found necessary only under the lock means unlocking, reserving and checking again
+            if(needsThumbnail(blobService.findByHash(hash),thumbnail)){
+                reservation=reserveDecode(received.temp());
+            }
+            boolean reserve=false;
+            do{
+                if(reserve){
+                    reservation=reserveDecode(received.temp());
+                }
+                ReentrantLock lock=blobService.lockFor(hash);
+                lock.lock();
+                try{
+                    //content already stored keeps its thumbnail, otherwise the old one is reused before anything is decoded
+                    Optional<Blob> existing=blobService.findByHash(hash);
+                    boolean generate=needsThumbnail(existing,thumbnail);
+                    if(!generate && reservation!=null){
+                        reservation.close();
+                        reservation=null;
+                    }
+                    reserve=generate && reservation==null;
+                    if(!reserve){
+                        boolean adopt=false;
+                        if(generate){
+                            if(existing.isPresent()){
+                                blobService.retryThumbnail(hash);
+                            }
+                            status=ThumbnailStatus.PENDING;
+                        }else if(existing.isPresent() && existing.get().getThumbnailStatus()!=ThumbnailStatus.FAILED){
+                            status=existing.get().getThumbnailStatus();
+                        }else{
+                            adopt=true;
+                            status=ThumbnailStatus.READY;
+                        }
+                        blob=blobService.acquire(received,contentType);
+                        if(adopt){
+                            blobService.adoptThumbnail(hash,thumbnail);
+                        }
+                    }
+                }finally {
+                    lock.unlock();
+                }
+            }while(reserve);
+            updated=photoRepository.moveToBlob(photo.getId(),blob,hash,status)>0;
+        }catch (IOException|RuntimeException e){
+            abandon(received,blob,reservation);
+            throw e;
+        }
+        if(!updated){
+            abandon(received,blob,reservation);
+            return false;
+        }
+
+        photo.setFileName(hash);
+        photo.setContentType(contentType);
+        if(reservation!=null){
+            thumbnailService.submit(photo,reservation);
+        }else if(status==ThumbnailStatus.PENDING){
+            //another photo of this content is generating the thumbnail and may have finished before the update
+            photoRepository.syncThumbnailStatus(List.of(photo.getId()));
+        }
+        deleteLegacyFile(original);
+        deleteLegacyFile(thumbnail);
+        return true;
+    }
+
+    //a decode is needed unless the content is stored with a usable thumbnail or the old thumbnail can be adopted
+    private boolean needsThumbnail(Optional<Blob> existing,Path thumbnail){
+        if(existing.isPresent() && existing.get().getThumbnailStatus()!=ThumbnailStatus.FAILED){
+            return false;
+        }
+        return !Files.isRegularFile(thumbnail);
+    }
+
+    private ImageMemoryBudget.Reservation reserveDecode(Path image)throws IOException{
+        ImageHeader header=AppUtil.readImageHeader(image);
+        return imageMemoryBudget.reserve(header,thumbnailService.decodeBytes(header));
+    }
+
+    private void abandon(BlobService.ReceivedFile received,Blob blob,ImageMemoryBudget.Reservation reservation)throws IOException{
+        if(reservation!=null){
+            reservation.close();
+        }
+        if(blob==null){
+            Files.deleteIfExists(received.temp());
+        }else if(blobService.release(received.hash())){
+            storageCleaner.deleteBlobs(List.of(received.hash()));
+        }
+    }
+
+    //the folder holding the old uploads/{album_id} folders
+    public Path legacyRoot(){
+        return Paths.get(legacyRoot).toAbsolutePath();
+    }
+
+    //where a photo that was not moved yet is kept, {legacy-root}/{album_id}/{photos|thumbnails}/{file_name}
+    public Path legacyPath(long album_id,String folder_name,String file_name){
+        return legacyRoot().resolve(Long.toString(album_id)).resolve(folder_name).resolve(file_name);
+    }
+
+    //a photo that has not been moved yet is read from its old place; throws NoSuchFileException when it is gone
+    public PhotoStorage.StoredObject statLegacy(long album_id,String folder_name,String file_name)throws IOException{
+        Path file=legacyPath(album_id,folder_name,file_name);
+        BasicFileAttributes attributes=Files.readAttributes(file,BasicFileAttributes.class);
+        return new PhotoStorage.StoredObject(folder_name,file_name,attributes.size(),attributes.lastModifiedTime().toMillis(),file);
+    }
+
+    //called once the row of a photo that was never moved is deleted
+    public void deleteLegacyPhoto(long album_id,String file_name)throws IOException{
+        deleteLegacyFile(legacyPath(album_id,AppUtil.PHOTOS_FOLDER_NAME,file_name));
+        deleteLegacyFile(legacyPath(album_id,AppUtil.THUMBNAIL_FOLDER_NAME,file_name));
+    }
+
+    //removes whatever is left of a deleted album's old folder in the background. A failed walk (a file still open by a
+    //download) is retried with the StorageCleaner's backoff; what is left after the last attempt has no photo rows and is
+    //quarantined by the reconciler's legacy pass
+    public void deleteLegacyAlbum(long album_id){
+        Path folder=legacyRoot().resolve(Long.toString(album_id));
+        if(!Files.isDirectory(folder)){
+            return;
+        }
+        storageScheduler.execute(() -> attemptLegacyAlbum(album_id,folder,1));
+    }
+
+    private void attemptLegacyAlbum(long album_id,Path folder,int attempt){
+        IOException error=deleteTree(folder);
+        if(error==null){
+            return;
+        }
+        if(attempt>=maxAttempts){
+            log.warn("Giving up deleting old folder of album "+album_id+" after "+attempt+" attempts: "+error.getMessage());
+            return;
+        }
+        long delay=retryDelayMs<<(attempt-1);
+        log.debug("Deleting old folder of album "+album_id+" failed, retrying in "+delay+"ms: "+error.getMessage());
+        storageScheduler.schedule(() -> attemptLegacyAlbum(album_id,folder,attempt+1),Instant.now().plusMillis(delay));
+    }
+
+    //deletes everything it can instead of stopping at the first failure; returns the last failure, null when the folder is gone
+    private IOException deleteTree(Path folder){
+        IOException[] failure=new IOException[1];
+        try{
+            Files.walkFileTree(folder,new SimpleFileVisitor<>(){
+                @Override
+                public FileVisitResult visitFile(Path file,BasicFileAttributes attrs){
+                    try{
+                        Files.deleteIfExists(file);
+                    }catch (IOException e){
+                        failure[0]=e;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file,IOException exc){
+                    if(!(exc instanceof NoSuchFileException)){
+                        failure[0]=exc;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir,IOException exc){
+                    if(exc!=null){
+                        failure[0]=exc;
+                        return FileVisitResult.CONTINUE;
+                    }
+                    try{
+                        Files.deleteIfExists(dir);
+                    }catch (IOException e){
+                        failure[0]=e;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }catch (NoSuchFileException e){
+            return null;
+        }catch (IOException e){
+            return e;
+        }
+        return failure[0];
+    }
+
+    //the last file of a folder takes the folder, and an emptied album folder, with it
+    private void deleteLegacyFile(Path file)throws IOException{
+        Files.deleteIfExists(file);
+        try{
+            Files.delete(file.getParent());
+            Files.delete(file.getParent().getParent());
+        }catch (DirectoryNotEmptyException|NoSuchFileException e){
+            //still in use
+        }
+    }
+}
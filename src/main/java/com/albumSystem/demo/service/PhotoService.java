@@ -1,10 +1,17 @@
 package com.albumSystem.demo.service;
 
 import com.albumSystem.demo.model.Photo;
+import com.albumSystem.demo.payload.album.CursorPageDTO;
+import com.albumSystem.demo.payload.album.PhotoDTO;
+import com.albumSystem.demo.payload.album.PhotoSummaryDTO;
 import com.albumSystem.demo.repository.PhotoRepository;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,17 +20,56 @@ public class PhotoService {
     @Autowired
     private PhotoRepository photoRepository;
 
+    @Autowired
+    private BlobService blobService;
+
     public Photo save(Photo photo) {
         return photoRepository.save(photo);
     }
 
+    //one transaction for the whole list, inserted in JDBC batches of hibernate.jdbc.batch_size
+    public List<Photo> saveAll(List<Photo> photos){
+        return photoRepository.saveAll(photos);
+    }
+
     public Optional<Photo> findById(long photo_id){
         return photoRepository.findById(photo_id);
     }
+    //empty when the photo does not exist, is not in that album, or the album is not the account's
+    public Optional<Photo> findOwnedPhoto(long photo_id,long album_id,long account_id){
+        return photoRepository.findByIdAndAlbum_IdAndAlbum_Account_Id(photo_id,album_id,account_id);
+    }
     public void delete(Photo photo){
         photoRepository.delete(photo);
     }
+
+    //deletes the row and drops its blob reference together; returns the hash when it was the last photo of that
+    //content, the caller then hands the files to StorageCleaner
+    @Transactional
+    public String deletePhoto(Photo photo){
+        photoRepository.delete(photo);
+        if(photo.getBlob()==null){
+            return null;
+        }
+        String hash=photo.getBlob().getHash();
+        return blobService.release(hash) ? hash : null;
+    }
+
+    public void syncThumbnailStatus(List<Long> photo_ids){
+        photoRepository.syncThumbnailStatus(photo_ids);
+    }
     public List<Photo> findByAlbumId(long id){
         return photoRepository.findByAlbum_Id(id);
     }
+    //one page of photos after the cursor (a photo id, 0 for the first page)
+    public CursorPageDTO<PhotoDTO> findPhotoPage(long album_id,long cursor,Integer size){
+        int pageSize=AppUtil.getPageSize(size);
+        List<PhotoSummaryDTO> rows=photoRepository.findSummariesByAlbumId(album_id,cursor,PageRequest.of(0,pageSize+1));
+        List<PhotoDTO> photos=new ArrayList<>();
+        for(PhotoSummaryDTO row:rows.subList(0,Math.min(pageSize,rows.size()))){
+            photos.add(row.toPhotoDTO());
+        }
+        Long next=rows.size()>pageSize ? photos.get(pageSize-1).getId() : null;
+        return new CursorPageDTO<>(photos,next);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,284 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.exception.DecodeBudgetExceededException;
+import com.albumSystem.demo.model.Album;
+import com.albumSystem.demo.model.Blob;
+import com.albumSystem.demo.model.Photo;
+import com.albumSystem.demo.payload.album.PhotoViewDTO;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.AppUtils.ImageHeader;
+import com.albumSystem.demo.util.constants.AlbumError;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Service
+@Slf4j
+public class PhotoUploadService {
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private ImageMemoryBudget imageMemoryBudget;
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private StorageCleaner storageCleaner;
+
+    @Autowired
+    @Qualifier("uploadExecutor")
+    private ThreadPoolTaskExecutor uploadExecutor;
+
+    @Value("${album.upload.parallel:true}")
+    private boolean parallel;
+
+    //stores every file of one upload request and returns the SUCCESS/ERRORS map in the order the files were sent
+    public HashMap<String, List<?>> upload(Album album,MultipartFile[] files){
+        List<PhotoViewDTO> fileNamesWithSuccess=new ArrayList<>();
+        List<String> fileNamesWithError=new ArrayList<>();
+
+        List<CompletableFuture<StagedPhoto>> results=new ArrayList<>(files.length);
+        for(MultipartFile file:files){
+            if(parallel && files.length>1){
+                results.add(CompletableFuture.supplyAsync(() -> stage(album,file),uploadExecutor));
+            }else{
+                results.add(CompletableFuture.completedFuture(stage(album,file)));
+            }
+        }
+        //each file owns its own future, so joining them in request order keeps the response deterministic
+        int rejectedForBudget=0;
+        List<StagedPhoto> staged=new ArrayList<>();
+        for(int i=0;i<files.length;i++){
+            StagedPhoto stagedPhoto=results.get(i).join();
+            if(stagedPhoto==BUDGET_EXHAUSTED){
+                rejectedForBudget++;
+                fileNamesWithError.add(files[i].getOriginalFilename());
+            }else if(stagedPhoto!=null){
+                staged.add(stagedPhoto);
+            }else{
+                fileNamesWithError.add(files[i].getOriginalFilename());
+            }
+        }
+
+        for(Photo photo:save(staged,fileNamesWithError)){
+            fileNamesWithSuccess.add(new PhotoViewDTO(photo.getId(),photo.getName(),photo.getDescription()));
+        }
+        if(rejectedForBudget>0 && fileNamesWithSuccess.isEmpty()){
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,"Image decoding is saturated, retry later");
+        }
+
+        HashMap<String, List<?>> result=new HashMap<>();
+        result.put("SUCCESS",fileNamesWithSuccess);
+        result.put("ERRORS",fileNamesWithError);
+        return result;
+    }
+
+    //all rows in one transaction; ids come from the pooled sequence and the inserts are batched.
+    //then hands new content to the thumbnail workers. Returns the saved photos, none when the insert failed
+    private List<Photo> save(List<StagedPhoto> staged,List<String> fileNamesWithError){
+        List<Photo> photos=new ArrayList<>(staged.size());
+        if(staged.isEmpty()){
+            return photos;
+        }
+        for(StagedPhoto stagedPhoto:staged){
+            photos.add(stagedPhoto.photo());
+        }
+        try{
+            photoService.saveAll(photos);
+        }catch (RuntimeException e){
+            log.debug(AlbumError.PHOTO_UPLOAD_ERROR.toString()+": "+e.getMessage());
+            List<String> unreferenced=new ArrayList<>();
+            for(StagedPhoto stagedPhoto:staged){
+                String hash=stagedPhoto.photo().getFileName();
+                if(blobService.release(hash)){
+                    unreferenced.add(hash);
+                    if(stagedPhoto.reservation()!=null){
+                        stagedPhoto.reservation().close();
+                    }
+                }else if(stagedPhoto.reservation()!=null){
+                    //other photos of this content rely on the thumbnail this upload claimed
+                    thumbnailService.submit(stagedPhoto.photo(),stagedPhoto.reservation());
+                }
+                fileNamesWithError.add(stagedPhoto.photo().getOriginalFileName());
+            }
+            storageCleaner.deleteBlobs(unreferenced);
+            return List.of();
+        }
+        List<Long> waiting=new ArrayList<>();
+        for(StagedPhoto stagedPhoto:staged){
+            Photo photo=stagedPhoto.photo();
+            if(stagedPhoto.reservation()!=null){
+                //new content: its thumbnail is decoded from the stored original by the background worker
+                thumbnailService.submit(photo,stagedPhoto.reservation());
+            }else if(photo.getThumbnailStatus()==ThumbnailStatus.PENDING){
+                waiting.add(photo.getId());
+            }
+        }
+        //another upload of the same content is generating the thumbnail and may have finished before these rows existed
+        if(!waiting.isEmpty()){
+            photoService.syncThumbnailStatus(waiting);
+        }
+        return photos;
+    }
+
+    //stores one file that was received outside a multipart request (a committed upload session);
+    //null when it is not a usable image or could not be stored
+    public PhotoViewDTO upload(Album album,BlobService.ReceivedFile received,String fileName,String contentType){
+        if(!isSupported(contentType)){
+            discard(received,null);
+            return null;
+        }
+        StagedPhoto staged=stage(album,received,fileName,contentType);
+        if(staged==null){
+            return null;
+        }
+        if(staged==BUDGET_EXHAUSTED){
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,"Image decoding is saturated, retry later");
+        }
+        List<Photo> saved=save(List.of(staged),new ArrayList<>());
+        if(saved.isEmpty()){
+            return null;
+        }
+        Photo photo=saved.get(0);
+        return new PhotoViewDTO(photo.getId(),photo.getName(),photo.getDescription());
+    }
+
+    public boolean isSupported(String contentType){
+        return contentType!=null && (contentType.equals("image/png")
+                || contentType.equals("image/jpg")
+                || contentType.equals("image/jpeg"));
+    }
+
+    //a file that is stored and counted as a blob reference, waiting for its row to be inserted;
+    //the reservation is null when the content already has (or is getting) a thumbnail
+    record StagedPhoto(Photo photo,ImageMemoryBudget.Reservation reservation){}
+
+    //marker returned by stage() when the decode memory budget could not be reserved in time
+    private static final StagedPhoto BUDGET_EXHAUSTED=new StagedPhoto(null,null);
+
+    //returns null when the file was rejected or could not be stored
+    StagedPhoto stage(Album album,MultipartFile file){
+        String contentType=file.getContentType();
+        if(!isSupported(contentType)){
+            return null;
+        }
+        BlobService.ReceivedFile received;
+        try{
+            //hashed while it is copied to disk, identical content is stored only once
+            received=blobService.receive(file);
+        }catch (IOException e){
+            log.debug(AlbumError.PHOTO_UPLOAD_ERROR.toString()+": "+e.getMessage());
+            return null;
+        }
+        return stage(album,received,file.getOriginalFilename(),contentType);
+    }
+
+    //the received temp file is consumed either way: moved into the store, or deleted when staging fails
+    StagedPhoto stage(Album album,BlobService.ReceivedFile received,String fileName,String contentType){
+        ImageMemoryBudget.Reservation reservation=null;
+        try{
+            String hash=received.hash();
+
+            //reserve the heap the thumbnail decode will need before accepting new content;
+            //decompression bombs are refused from the header alone. Content seen before reuses its thumbnail
+            if(needsThumbnail(blobService.findByHash(hash))){
+                reservation=reserveDecode(received.temp());
+            }
+
+            //the reservation may wait for memory, so it is never taken while the stripe lock is held: that would stall
+            //every upload and delete of the hashes sharing the stripe. Missing one under the lock means unlocking,
+            //reserving and checking again; the second pass always has the reservation it needs
+            Blob blob=null;
+            boolean reserve=false;
+            do{
+                if(reserve){
+                    reservation=reserveDecode(received.temp());
+                }
+                ReentrantLock lock=blobService.lockFor(hash);
+                lock.lock();
+                try{
+                    //checked again under the lock, a concurrent upload of the same content may have taken over the thumbnail
+                    Optional<Blob> existing=blobService.findByHash(hash);
+                    boolean generate=needsThumbnail(existing);
+                    if(!generate && reservation!=null){
+                        reservation.close();
+                        reservation=null;
+                    }
+                    reserve=generate && reservation==null;
+                    if(!reserve){
+                        if(generate && existing.isPresent()){
+                            blobService.retryThumbnail(hash);
+                        }
+                        blob=blobService.acquire(received,contentType);
+                    }
+                }finally {
+                    lock.unlock();
+                }
+            }while(reserve);
+
+            Photo photo=new Photo();
+            photo.setName(fileName);
+            photo.setFileName(hash);
+            photo.setOriginalFileName(fileName);
+            photo.setContentType(contentType);
+            photo.setThumbnailStatus(reservation!=null ? ThumbnailStatus.PENDING : blob.getThumbnailStatus());
+            photo.setBlob(blob);
+            photo.setAlbum(album);
+            return new StagedPhoto(photo,reservation);
+        }catch (DecodeBudgetExceededException e){
+            log.debug(AlbumError.PHOTO_UPLOAD_ERROR.toString()+": "+e.getMessage());
+            discard(received,reservation);
+            return BUDGET_EXHAUSTED;
+        }catch (Exception e){
+            log.debug(AlbumError.PHOTO_UPLOAD_ERROR.toString()+": "+e.getMessage());
+            discard(received,reservation);
+            return null;
+        }
+    }
+
+    private boolean needsThumbnail(Optional<Blob> existing){
+        return existing.isEmpty() || existing.get().getThumbnailStatus()==ThumbnailStatus.FAILED;
+    }
+
+    private ImageMemoryBudget.Reservation reserveDecode(Path image)throws IOException{
+        ImageHeader header=AppUtil.readImageHeader(image);
+        return imageMemoryBudget.reserve(header,thumbnailService.decodeBytes(header));
+    }
+
+    //the temp file is already gone once the blob was acquired
+    private void discard(BlobService.ReceivedFile received,ImageMemoryBudget.Reservation reservation){
+        if(reservation!=null){
+            reservation.close();
+        }
+        if(received!=null){
+            try{
+                Files.deleteIfExists(received.temp());
+            }catch (IOException e){
+                log.debug(AlbumError.PHOTO_UPLOAD_ERROR.toString()+": "+e.getMessage());
+            }
+        }
+    }
+}
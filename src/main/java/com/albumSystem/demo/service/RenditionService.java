@@ -0,0 +1,79 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.AppUtils.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+
+//thumbnails in the sizes of an allow-list. The default size is made by the upload pipeline; the others are decoded from
+//the original the first time they are asked for and kept in thumbnails-{width}. Requests for a rendition that is
+//being decoded join that decode through a SingleFlight, so each size of a content is decoded once
+@Service
+public class RenditionService {
+
+    @Value("${album.thumbnail.sizes:150,300,600,1200}")
+    private List<Integer> sizes;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    //keyed by folder/hash
+    private SingleFlight<String,PhotoStorage.StoredObject> renders;
+
+    private List<String> folders;
+
+    @PostConstruct
+    void init(){
+        renders=new SingleFlight<>("renditions",meterRegistry);
+        folders=new ArrayList<>();
+        folders.add(AppUtil.THUMBNAIL_FOLDER_NAME);
+        for(int width:sizes){
+            String folder=AppUtil.getRenditionFolder(width);
+            if(!folders.contains(folder)){
+                folders.add(folder);
+            }
+        }
+    }
+
+    public boolean isAllowed(int width){
+        return sizes.contains(width);
+    }
+
+    //every folder a thumbnail of some content can be stored in, the default one first
+    public List<String> folders(){
+        return folders;
+    }
+
+    //the stored rendition, decoded first when it does not exist yet.
+    //throws DecodeBudgetExceededException when the decode could not get memory, NoSuchFileException without an original
+    public PhotoStorage.StoredObject get(String hash,String format,int width)throws IOException{
+        String folder=AppUtil.getRenditionFolder(width);
+        try{
+            return photoStorage.stat(folder,hash);
+        }catch (NoSuchFileException e){
+            //decoded below
+        }
+        return renders.execute(folder+"/"+hash,() -> {
+            //a decode that finished between the stat above and this call has already stored it
+            if(!photoStorage.exists(folder,hash)){
+                thumbnailService.renderRendition(hash,format,width);
+            }
+            return photoStorage.stat(folder,hash);
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.repository.BlobRepository;
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+//removes the files of blobs whose last reference is gone, in the background. The rows are already deleted when this
+//runs, so a failure (a file still open by a download) only leaves garbage behind and is retried with backoff
+@Service
+@Slf4j
+public class StorageCleaner {
+
+    @Autowired
+    @Qualifier("storageScheduler")
+    private ThreadPoolTaskScheduler storageScheduler;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private ThumbnailCache thumbnailCache;
+
+    @Autowired
+    private RenditionService renditionService;
+
+    @Value("${album.cleanup.max-attempts:5}")
+    private int maxAttempts;
+
+    //doubled after every failed attempt
+    @Value("${album.cleanup.retry-delay-ms:2000}")
+    private long retryDelayMs;
+
+    public void deleteBlobs(Collection<String> hashes){
+        if(hashes.isEmpty()){
+            return;
+        }
+        List<String> pending=new ArrayList<>(hashes);
+        storageScheduler.execute(() -> attempt(pending,1));
+    }
+
+    private void attempt(List<String> hashes,int attempt){
+        List<String> failed=new ArrayList<>();
+        IOException lastError=null;
+        for(String hash:hashes){
+            try{
+                deleteBlob(hash);
+            }catch (IOException e){
+                failed.add(hash);
+                lastError=e;
+            }
+        }
+        if(failed.isEmpty()){
+            return;
+        }
+        if(attempt>=maxAttempts){
+            log.warn("Giving up deleting "+failed.size()+" blobs after "+attempt+" attempts: "+lastError.getMessage());
+            return;
+        }
+        long delay=retryDelayMs<<(attempt-1);
+        log.debug("Deleting "+failed.size()+" blobs failed, retrying in "+delay+"ms: "+lastError.getMessage());
+        storageScheduler.schedule(() -> attempt(failed,attempt+1),Instant.now().plusMillis(delay));
+    }
+
+    //an upload of the same content may have brought the row back since the delete; its file is then left alone
+    private void deleteBlob(String hash)throws IOException{
+        ReentrantLock lock=blobService.lockFor(hash);
+        lock.lock();
+        try{
+            if(blobRepository.existsById(hash)){
+                return;
+            }
+            photoStorage.delete(AppUtil.PHOTOS_FOLDER_NAME,hash);
+            for(String folder:renditionService.folders()){
+                photoStorage.delete(folder,hash);
+            }
+            thumbnailCache.invalidate(hash);
+        }finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.repository.BlobRepository;
+import com.albumSystem.demo.repository.PhotoRepository;
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+//finds stored objects that no Blob row references and reclaims them in two steps: orphans are first moved to the
+//.quarantine folder, and only purged once they have sat there for the retention period, so a wrong call can be undone.
+//Each run handles a few of the 256 first-level shards (hashes starting 00..ff) in order and records the last finished
+//one in a checkpoint file, so a restart resumes where it stopped; visits are throttled to leave I/O for downloads.
+//Until the LegacyLayoutMigrator has emptied the old uploads/{album_id} folders they get the same treatment, a few album
+//folders per run, with file names diffed against the album's photos that were not moved yet
+@Service
+@Slf4j
+public class StorageReconciler {
+
+    static final String QUARANTINE_FOLDER_NAME=".quarantine";
+    static final String CHECKPOINT_FILE_NAME=".reconcile-checkpoint";
+    static final String LEGACY_CHECKPOINT_FILE_NAME=".reconcile-legacy-checkpoint";
+
+    private static final int SHARDS=256;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private LegacyLayoutMigrator legacyLayoutMigrator;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private RenditionService renditionService;
+
+    @Value("${album.reconcile.enabled:false}")
+    private boolean enabled;
+
+    @Value("${album.reconcile.shards-per-run:4}")
+    private int shardsPerRun;
+
+    //hashes per IN query
+    @Value("${album.reconcile.batch-size:500}")
+    private int batchSize;
+
+    @Value("${album.reconcile.max-files-per-second:200}")
+    private int maxFilesPerSecond;
+
+    //younger objects are skipped: an upload stores its file before the row is inserted
+    @Value("${album.reconcile.grace-minutes:60}")
+    private long graceMinutes;
+
+    @Value("${album.reconcile.quarantine-hours:24}")
+    private long quarantineHours;
+
+    @Value("${album.reconcile.interval-ms:60000}")
+    private long intervalMs;
+
+    //a thread of its own, the throttled walk sleeps on it
+    @Autowired
+    @Qualifier("reconcileScheduler")
+    private ThreadPoolTaskScheduler reconcileScheduler;
+
+    private long visited;
+    private long throttleStart;
+
+    @PostConstruct
+    void init(){
+        if(enabled){
+            reconcileScheduler.scheduleWithFixedDelay(this::run,Instant.now().plusMillis(intervalMs),Duration.ofMillis(intervalMs));
+        }
+    }
+
+    public void run(){
+        try{
+            reconcileNextShards();
+            reconcileNextLegacyAlbums();
+            purgeTemp();
+            purgeQuarantine();
+            purgeLegacyQuarantine();
+        }catch (IOException e){
+            log.warn("Storage reconcile failed: "+e.getMessage());
+        }
+    }
+
+    //one slice of the store: the next shardsPerRun shards after the checkpoint, starting over after ff
+    public void reconcileNextShards()throws IOException{
+        Path checkpointFile=photoStorage.tempFolder().resolve(CHECKPOINT_FILE_NAME);
+        int next=(int) readCheckpoint(checkpointFile)+1;
+        if(next>=SHARDS){
+            next=0;
+        }
+        startThrottle();
+        for(int shard=next;shard<Math.min(next+shardsPerRun,SHARDS);shard++){
+            String prefix=String.format("%02x",shard);
+            int orphans=0;
+            for(String folder:storedFolders()){
+                orphans+=reconcileShard(folder,prefix);
+            }
+            if(orphans>0){
+                log.info("Quarantined "+orphans+" orphaned objects of shard "+prefix);
+            }
+            writeCheckpoint(checkpointFile,shard);
+        }
+    }
+
+    private int reconcileShard(String folder,String prefix)throws IOException{
+        long cutoff=System.currentTimeMillis()-TimeUnit.MINUTES.toMillis(graceMinutes);
+        List<String> batch=new ArrayList<>(batchSize);
+        int[] orphans={0};
+        photoStorage.list(folder,prefix,(hash,lastModified) -> {
+            throttle();
+            if(lastModified<cutoff){
+                batch.add(hash);
+                if(batch.size()>=batchSize){
+                    orphans[0]+=quarantineOrphans(folder,batch);
+                    batch.clear();
+                }
+            }
+        });
+        if(!batch.isEmpty()){
+            orphans[0]+=quarantineOrphans(folder,batch);
+        }
+        return orphans[0];
+    }
+
+    //one query per batch: which of these hashes still have a blob row. A candidate is checked again under its blob lock
+    //right before the move, an upload of the same content may have brought the row back and be relying on the file
+    private int quarantineOrphans(String folder,List<String> hashes)throws IOException{
+        Set<String> referenced=new HashSet<>(blobRepository.findExistingHashes(hashes));
+        int moved=0;
+        for(String hash:hashes){
+            if(referenced.contains(hash)){
+                continue;
+            }
+            ReentrantLock lock=blobService.lockFor(hash);
+            lock.lock();
+            try{
+                if(blobRepository.existsById(hash)){
+                    continue;
+                }
+                photoStorage.move(folder,hash,QUARANTINE_FOLDER_NAME+"/"+folder);
+                moved++;
+            }catch (NoSuchFileException e){
+                //already gone
+            }finally {
+                lock.unlock();
+            }
+        }
+        return moved;
+    }
+
+    //the next shardsPerRun album folders of the old layout after the legacy checkpoint, starting over after the last one
+    public void reconcileNextLegacyAlbums()throws IOException{
+        Path root=legacyLayoutMigrator.legacyRoot();
+        if(!Files.isDirectory(root)){
+            return;
+        }
+        Path checkpointFile=photoStorage.tempFolder().resolve(LEGACY_CHECKPOINT_FILE_NAME);
+        List<Long> albumIds=listLegacyAlbumIds(root,readCheckpoint(checkpointFile));
+        if(albumIds.isEmpty()){
+            writeCheckpoint(checkpointFile,-1);
+            return;
+        }
+        startThrottle();
+        for(long album_id:albumIds){
+            int orphans=0;
+            for(String folder:List.of(AppUtil.PHOTOS_FOLDER_NAME,AppUtil.THUMBNAIL_FOLDER_NAME)){
+                orphans+=reconcileLegacyFolder(root,album_id,folder);
+            }
+            if(orphans>0){
+                log.info("Quarantined "+orphans+" orphaned files of the old folder of album "+album_id);
+            }
+            writeCheckpoint(checkpointFile,album_id);
+        }
+    }
+
+    //the shardsPerRun smallest numeric folder names above the checkpoint; only names are read
+    private List<Long> listLegacyAlbumIds(Path root,long checkpoint)throws IOException{
+        PriorityQueue<Long> smallest=new PriorityQueue<>(Comparator.reverseOrder());
+        try(DirectoryStream<Path> stream=Files.newDirectoryStream(root)){
+            for(Path entry:stream){
+                long album_id;
+                try{
+                    album_id=Long.parseLong(entry.getFileName().toString());
+                }catch (NumberFormatException e){
+                    continue;
+                }
+                if(album_id<=checkpoint){
+                    continue;
+                }
+                smallest.add(album_id);
+                if(smallest.size()>shardsPerRun){
+                    smallest.poll();
+                }
+            }
+        }
+        List<Long> albumIds=new ArrayList<>(smallest);
+        Collections.sort(albumIds);
+        return albumIds;
+    }
+
+    private int reconcileLegacyFolder(Path root,long album_id,String folder)throws IOException{
+        Path directory=root.resolve(Long.toString(album_id)).resolve(folder);
+        if(!Files.isDirectory(directory)){
+            return 0;
+        }
+        FileTime cutoff=FileTime.fromMillis(System.currentTimeMillis()-TimeUnit.MINUTES.toMillis(graceMinutes));
+        List<String> batch=new ArrayList<>(batchSize);
+        int orphans=0;
+        try(DirectoryStream<Path> stream=Files.newDirectoryStream(directory)){
+            for(Path file:stream){
+                throttle();
+                try{
+                    if(Files.getLastModifiedTime(file).compareTo(cutoff)>=0){
+                        continue;
+                    }
+                }catch (NoSuchFileException e){
+                    //migrated or deleted while walking
+                    continue;
+                }
+                batch.add(file.getFileName().toString());
+                if(batch.size()>=batchSize){
+                    orphans+=quarantineLegacyOrphans(root,album_id,folder,batch);
+                    batch.clear();
+                }
+            }
+        }
+        if(!batch.isEmpty()){
+            orphans+=quarantineLegacyOrphans(root,album_id,folder,batch);
+        }
+        return orphans;
+    }
+
+    //a name is still in use while a photo of the album that was not moved yet has it; moved photos are read from the store
+    private int quarantineLegacyOrphans(Path root,long album_id,String folder,List<String> names)throws IOException{
+        Set<String> referenced=new HashSet<>(photoRepository.findLegacyFileNames(album_id,names));
+        Path source=root.resolve(Long.toString(album_id)).resolve(folder);
+        Path target=root.resolve(QUARANTINE_FOLDER_NAME).resolve(Long.toString(album_id)).resolve(folder);
+        int moved=0;
+        for(String name:names){
+            if(referenced.contains(name)){
+                continue;
+            }
+            try{
+                Files.createDirectories(target);
+                Path quarantined=Files.move(source.resolve(name),target.resolve(name),StandardCopyOption.REPLACE_EXISTING);
+                //the retention period counts from the move, not from the upload
+                Files.setLastModifiedTime(quarantined,FileTime.fromMillis(System.currentTimeMillis()));
+                moved++;
+            }catch (NoSuchFileException e){
+                //already gone
+            }
+        }
+        return moved;
+    }
+
+    //uploads interrupted between receiving and storing leave their temp file behind
+    public void purgeTemp()throws IOException{
+        Path tmpFolder=photoStorage.tempFolder();
+        FileTime cutoff=FileTime.fromMillis(System.currentTimeMillis()-TimeUnit.MINUTES.toMillis(graceMinutes));
+        try(DirectoryStream<Path> stream=Files.newDirectoryStream(tmpFolder)){
+            for(Path file:stream){
+                if(file.getFileName().toString().startsWith(".")){
+                    continue;
+                }
+                throttle();
+                try{
+                    if(Files.getLastModifiedTime(file).compareTo(cutoff)<0){
+                        Files.deleteIfExists(file);
+                    }
+                }catch (NoSuchFileException e){
+                    //stored meanwhile
+                }
+            }
+        }
+    }
+
+    //deletes quarantined objects older than the retention period
+    public void purgeQuarantine()throws IOException{
+        long cutoff=System.currentTimeMillis()-Duration.ofHours(quarantineHours).toMillis();
+        startThrottle();
+        for(String folder:storedFolders()){
+            String quarantine=QUARANTINE_FOLDER_NAME+"/"+folder;
+            photoStorage.list(quarantine,"",(hash,lastModified) -> {
+                throttle();
+                if(lastModified<cutoff){
+                    photoStorage.delete(quarantine,hash);
+                }
+            });
+        }
+    }
+
+    //deletes quarantined old-layout files older than the retention period and the folders left empty
+    public void purgeLegacyQuarantine()throws IOException{
+        Path quarantine=legacyLayoutMigrator.legacyRoot().resolve(QUARANTINE_FOLDER_NAME);
+        if(!Files.isDirectory(quarantine)){
+            return;
+        }
+        FileTime cutoff=FileTime.fromMillis(System.currentTimeMillis()-Duration.ofHours(quarantineHours).toMillis());
+        startThrottle();
+        Files.walkFileTree(quarantine,new SimpleFileVisitor<>(){
+            @Override
+            public FileVisitResult visitFile(Path file,BasicFileAttributes attrs)throws IOException{
+                throttle();
+                if(attrs.lastModifiedTime().compareTo(cutoff)<0){
+                    Files.deleteIfExists(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file,IOException exc){
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir,IOException exc){
+                try{
+                    Files.delete(dir);
+                }catch (IOException e){
+                    //not empty yet
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    //originals and the thumbnails of every allowed size
+    private List<String> storedFolders(){
+        List<String> folders=new ArrayList<>();
+        folders.add(AppUtil.PHOTOS_FOLDER_NAME);
+        folders.addAll(renditionService.folders());
+        return folders;
+    }
+
+    private long readCheckpoint(Path checkpointFile){
+        try{
+            return Long.parseLong(Files.readString(checkpointFile).trim());
+        }catch (IOException|NumberFormatException e){
+            return -1;
+        }
+    }
+
+    //replaced atomically, so a crash never leaves half a number
+    private void writeCheckpoint(Path checkpointFile,long position)throws IOException{
+        Path temp=checkpointFile.resolveSibling(checkpointFile.getFileName()+".tmp");
+        Files.writeString(temp,Long.toString(position),StandardCharsets.UTF_8);
+        Files.move(temp,checkpointFile,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void startThrottle(){
+        visited=0;
+        throttleStart=System.nanoTime();
+    }
+
+    //sleeps whenever the walk gets ahead of maxFilesPerSecond
+    private void throttle(){
+        visited++;
+        long expectedNanos=visited*TimeUnit.SECONDS.toNanos(1)/maxFilesPerSecond;
+        long aheadNanos=expectedNanos-(System.nanoTime()-throttleStart);
+        if(aheadNanos>0){
+            try{
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.repository.PhotoRepository;
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+//default-size thumbnails of many photos of an album in one multipart/mixed response, one part per requested id in
+//request order. Each part names its photo in Content-ID and its outcome in X-Thumbnail-Status (READY, PENDING, FAILED
+//or NOT_FOUND); only READY parts have a body. Ownership of every id is proven by a single query, cached thumbnails are
+//written from memory and the others copied from their file channel, and the response is flushed after every part so
+//clients can show thumbnails while the rest is still coming
+@Service
+public class ThumbnailBatchService {
+
+    static final String STATUS_HEADER="X-Thumbnail-Status";
+    static final String NOT_FOUND="NOT_FOUND";
+    private static final byte[] CRLF="\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private ThumbnailCache thumbnailCache;
+
+    @Autowired
+    private FileDownloadService fileDownloadService;
+
+    @Autowired
+    private LegacyLayoutMigrator legacyLayoutMigrator;
+
+    @Value("${album.thumbnail.batch.max-photos:500}")
+    private int maxPhotos;
+
+    record Row(long photo_id,String fileName,String contentType,ThumbnailStatus status,boolean legacy){}
+
+    public int getMaxPhotos(){
+        return maxPhotos;
+    }
+
+    //false, with nothing written, when none of the photos is in an album of the account
+    public boolean write(long album_id,long account_id,List<Long> photo_ids,HttpServletResponse response)throws IOException{
+        LinkedHashSet<Long> ids=new LinkedHashSet<>(photo_ids);
+        Map<Long,Row> rows=new HashMap<>();
+        for(Object[] row:photoRepository.findOwnedThumbnails(ids,album_id,account_id)){
+            long photo_id=((Number) row[0]).longValue();
+            rows.put(photo_id,new Row(photo_id,(String) row[1],(String) row[2],(ThumbnailStatus) row[3],row[4]==null));
+        }
+        if(rows.isEmpty()){
+            return false;
+        }
+
+        String boundary=MimeTypeUtils.generateMultipartBoundaryString();
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType("multipart/mixed; boundary="+boundary);
+        response.setHeader(HttpHeaders.CACHE_CONTROL,CacheControl.noStore().getHeaderValue());
+        OutputStream out=response.getOutputStream();
+        WritableByteChannel target=Channels.newChannel(out);
+        for(long photo_id:ids){
+            writePart(album_id,photo_id,rows.get(photo_id),boundary,out,target);
+            response.flushBuffer();
+        }
+        out.write(("--"+boundary+"--\r\n").getBytes(StandardCharsets.US_ASCII));
+        response.flushBuffer();
+        return true;
+    }
+
+    private void writePart(long album_id,long photo_id,Row row,String boundary,OutputStream out,WritableByteChannel target)throws IOException{
+        if(row==null){
+            writeEmpty(photo_id,NOT_FOUND,boundary,out);
+            return;
+        }
+        //rows written before the thumbnail pipeline have no status and are treated as ready
+        if(row.status()==ThumbnailStatus.PENDING || row.status()==ThumbnailStatus.FAILED){
+            writeEmpty(photo_id,row.status().name(),boundary,out);
+            return;
+        }
+        MediaType contentType=row.contentType()!=null
+                ? MediaType.parseMediaType(row.contentType())
+                : MediaTypeFactory.getMediaType(row.fileName()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        ThumbnailCache.CachedThumbnail cached=row.legacy() ? null : thumbnailCache.getIfPresent(row.fileName());
+        if(cached!=null){
+            ByteBuffer bytes=cached.bytes();
+            out.write(partHeaders(photo_id,ThumbnailStatus.READY.name(),contentType,bytes.remaining(),boundary));
+            while(bytes.hasRemaining()){
+                target.write(bytes);
+            }
+            out.write(CRLF);
+            return;
+        }
+
+        PhotoStorage.StoredObject stored;
+        try{
+            stored=row.legacy()
+                    ? legacyLayoutMigrator.statLegacy(album_id,AppUtil.THUMBNAIL_FOLDER_NAME,row.fileName())
+                    : fileDownloadService.stat(AppUtil.THUMBNAIL_FOLDER_NAME,row.fileName());
+        }catch (NoSuchFileException e){
+            writeEmpty(photo_id,NOT_FOUND,boundary,out);
+            return;
+        }
+        //the headers promise stored.size() bytes, so the file is opened before they are written
+        if(stored.localPath()!=null){
+            try(FileChannel channel=FileChannel.open(stored.localPath(),StandardOpenOption.READ)){
+                out.write(partHeaders(photo_id,ThumbnailStatus.READY.name(),contentType,stored.size(),boundary));
+                fileDownloadService.transfer(channel,0,stored.size(),target);
+            }
+        }else{
+            try(InputStream in=photoStorage.get(stored.folder(),stored.hash())){
+                out.write(partHeaders(photo_id,ThumbnailStatus.READY.name(),contentType,stored.size(),boundary));
+                in.transferTo(out);
+            }
+        }
+        out.write(CRLF);
+    }
+
+    private void writeEmpty(long photo_id,String status,String boundary,OutputStream out)throws IOException{
+        out.write(partHeaders(photo_id,status,null,0,boundary));
+        out.write(CRLF);
+    }
+
+    private byte[] partHeaders(long photo_id,String status,MediaType contentType,long length,String boundary){
+        StringBuilder headers=new StringBuilder();
+        headers.append("--").append(boundary).append("\r\n");
+        headers.append("Content-ID: <").append(photo_id).append(">\r\n");
+        headers.append(STATUS_HEADER).append(": ").append(status).append("\r\n");
+        if(contentType!=null){
+            headers.append(HttpHeaders.CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+        }
+        headers.append(HttpHeaders.CONTENT_LENGTH).append(": ").append(length).append("\r\n\r\n");
+        return headers.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,101 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.AppUtils.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+//size-bounded cache of thumbnail bytes, keyed by content hash so one entry serves every photo of the same image.
+//The bytes live in direct buffers, so a full cache adds almost nothing to the heap the collector has to trace; Caffeine's W-TinyLFU decides what to evict. Hit/miss/eviction metrics are published as cache.* with name=thumbnails
+@Service
+public class ThumbnailCache {
+
+    public record CachedThumbnail(ByteBuffer bytes,long lastModified){}
+
+    @Value("${album.thumbnail.cache.max-size-mb:64}")
+    private long maxSizeMb;
+
+    //thumbnails are a few KB, anything much bigger is not worth the space
+    @Value("${album.thumbnail.cache.max-entry-kb:512}")
+    private long maxEntryKb;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    private Cache<String,CachedThumbnail> cache;
+
+    private SingleFlight<String,CachedThumbnail> reads;
+
+    @PostConstruct
+    void init(){
+        cache=Caffeine.newBuilder()
+                .maximumWeight(maxSizeMb*1024*1024)
+                .weigher((String hash,CachedThumbnail value) -> value.bytes().capacity())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry,cache,"thumbnails");
+        reads=new SingleFlight<>("thumbnail-reads",meterRegistry);
+    }
+
+    //returns the cached thumbnail or reads the stored one into a new direct buffer; null if it is too big to cache.
+    //throws NoSuchFileException when the thumbnail is not stored. Concurrent misses of one hash share a single read.
+    //the returned buffer is a read-only view with its own position, safe to drain from any thread
+    public CachedThumbnail get(String hash)throws IOException{
+        CachedThumbnail cached=cache.getIfPresent(hash);
+        if(cached==null){
+            cached=reads.execute(hash,() -> load(hash));
+            if(cached==null){
+                return null;
+            }
+        }
+        return new CachedThumbnail(cached.bytes().duplicate(),cached.lastModified());
+    }
+
+    //only what is already cached, nothing is read or admitted; null on a miss
+    public CachedThumbnail getIfPresent(String hash){
+        CachedThumbnail cached=cache.getIfPresent(hash);
+        return cached==null ? null : new CachedThumbnail(cached.bytes().duplicate(),cached.lastModified());
+    }
+
+    private CachedThumbnail load(String hash)throws IOException{
+        PhotoStorage.StoredObject stored=photoStorage.stat(AppUtil.THUMBNAIL_FOLDER_NAME,hash);
+        if(stored.size()>maxEntryKb*1024){
+            return null;
+        }
+        ByteBuffer buffer=ByteBuffer.allocateDirect((int) stored.size());
+        try(ReadableByteChannel channel=stored.localPath()!=null
+                ? FileChannel.open(stored.localPath(),StandardOpenOption.READ)
+                : Channels.newChannel(photoStorage.get(AppUtil.THUMBNAIL_FOLDER_NAME,hash))){
+            while(buffer.hasRemaining()){
+                if(channel.read(buffer)<0){
+                    break;
+                }
+            }
+        }
+        buffer.flip();
+        CachedThumbnail cached=new CachedThumbnail(buffer.asReadOnlyBuffer(),stored.lastModified());
+        cache.put(hash,cached);
+        return cached;
+    }
+
+    public void invalidate(String hash){
+        cache.invalidate(hash);
+    }
+}
@@ -0,0 +1,241 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.exception.DecodeBudgetExceededException;
+import com.albumSystem.demo.model.Blob;
+import com.albumSystem.demo.model.Photo;
+import com.albumSystem.demo.repository.BlobRepository;
+import com.albumSystem.demo.repository.PhotoRepository;
+import com.albumSystem.demo.storage.PhotoStorage;
+import com.albumSystem.demo.util.AppUtils.AppUtil;
+import com.albumSystem.demo.util.AppUtils.ImageHeader;
+import com.albumSystem.demo.util.constants.AlbumError;
+import com.albumSystem.demo.util.constants.ThumbnailEngine;
+import com.albumSystem.demo.util.constants.ThumbnailStatus;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+@Service
+@Slf4j
+public class ThumbnailService {
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private ImageMemoryBudget imageMemoryBudget;
+
+    @Autowired
+    @Qualifier("thumbnailExecutor")
+    private ThreadPoolTaskExecutor thumbnailExecutor;
+
+    @Value("${album.thumbnail.engine:SUBSAMPLED}")
+    private ThumbnailEngine engine;
+
+    @Value("${album.image.max-concurrent-decodes:2}")
+    private int maxConcurrentDecodes;
+
+    @Value("${album.thumbnail.pending-timeout-ms:300000}")
+    private long pendingTimeoutMs;
+
+    //caps full-size decodes across the thumbnail workers and the requests rendering other sizes on demand
+    private Semaphore decodePermits;
+
+    //hashes with a queued or running task, the re-queue pass leaves them alone
+    private final Set<String> queued=ConcurrentHashMap.newKeySet();
+
+    private static final int REQUEUE_PAGE_SIZE=100;
+
+    @PostConstruct
+    void init(){
+        decodePermits=new Semaphore(maxConcurrentDecodes,true);
+    }
+
+    //heap the configured engine needs to turn this image into a thumbnail, used for the decode reservation
+    public long decodeBytes(ImageHeader header){
+        return decodeBytes(header,AppUtil.THUMBNAIL_WIDTH);
+    }
+
+    public long decodeBytes(ImageHeader header,int width){
+        if(engine==ThumbnailEngine.SUBSAMPLED){
+            return header.decodedBytes(AppUtil.thumbnailSubsampling(header.getWidth(),header.getHeight(),width));
+        }
+        return header.decodedBytes();
+    }
+
+    //the photo row must already be saved with status PENDING; the worker flips every photo of the same content to READY or FAILED.
+    //the memory reservation taken at upload time is handed over and released once the decode is done
+    public void submit(Photo photo,ImageMemoryBudget.Reservation reservation){
+        enqueue(photo.getFileName(),photo.getContentType(),reservation);
+    }
+
+    //false when the queue is full or shutting down: the blob stays PENDING and requeueStale() picks it up later.
+    //a null reservation is taken by the worker itself
+    private boolean enqueue(String hash,String contentType,ImageMemoryBudget.Reservation reservation){
+        String format=contentType.split("/")[1];
+        queued.add(hash);
+        try{
+            thumbnailExecutor.execute(() -> generate(hash,format,reservation));
+            return true;
+        }catch (TaskRejectedException e){
+            queued.remove(hash);
+            if(reservation!=null){
+                reservation.close();
+            }
+            log.debug("Thumbnail of "+hash+" left pending: "+e.getMessage());
+            return false;
+        }
+    }
+
+    //the hash leaves queued only after the status is written, so the re-queue pass never sees it PENDING and unqueued meanwhile
+    void generate(String hash,String format,ImageMemoryBudget.Reservation reservation){
+        try{
+            render(hash,format,AppUtil.THUMBNAIL_WIDTH,AppUtil.THUMBNAIL_FOLDER_NAME,reservation);
+            updateStatus(hash,ThumbnailStatus.READY);
+        }catch (DecodeBudgetExceededException e){
+            //only a re-queued task reserves here; it stays PENDING for the next pass
+            log.debug("Thumbnail of "+hash+" left pending: "+e.getMessage());
+        }catch (Exception e){
+            log.debug(AlbumError.THUMBNAIL_GENERATION_ERROR.toString()+": "+e.getMessage());
+            updateStatus(hash,ThumbnailStatus.FAILED);
+        }finally {
+            queued.remove(hash);
+            if(reservation!=null){
+                reservation.close();
+            }
+        }
+    }
+
+    //nothing queued survives a restart, so every PENDING blob is queued again once the application is up
+    @EventListener(ApplicationReadyEvent.class)
+    public void requeueAfterStartup(){
+        requeuePending(System.currentTimeMillis());
+    }
+
+    //blobs PENDING for longer than the timeout with no task lost theirs to a full queue or a shutdown
+    @Scheduled(fixedDelayString = "${album.thumbnail.requeue-interval-ms:60000}",initialDelayString = "${album.thumbnail.requeue-interval-ms:60000}")
+    public void requeueStale(){
+        requeuePending(System.currentTimeMillis()-pendingTimeoutMs);
+    }
+
+    //stops at the first rejection, the queue is full and the rest waits for the next pass
+    int requeuePending(long before){
+        int requeued=0;
+        String after="";
+        while(true){
+            List<Blob> pending=blobRepository.findPendingSince(before,after,PageRequest.of(0,REQUEUE_PAGE_SIZE));
+            for(Blob blob:pending){
+                after=blob.getHash();
+                if(queued.contains(blob.getHash()) || blob.getContentType()==null){
+                    continue;
+                }
+                if(!enqueue(blob.getHash(),blob.getContentType(),null)){
+                    return requeued;
+                }
+                requeued++;
+            }
+            if(pending.size()<REQUEUE_PAGE_SIZE){
+                if(requeued>0){
+                    log.info("Queued "+requeued+" pending thumbnails again");
+                }
+                return requeued;
+            }
+        }
+    }
+
+    //decodes a rendition of another allowed size on demand, in the calling thread; the thumbnail status is not touched.
+    //throws DecodeBudgetExceededException when the decode budget stays exhausted
+    public void renderRendition(String hash,String format,int width)throws IOException{
+        render(hash,format,width,AppUtil.getRenditionFolder(width),null);
+    }
+
+    private void render(String hash,String format,int width,String folder,ImageMemoryBudget.Reservation reservation)throws IOException{
+        Path downloaded=null;
+        Path rendition=null;
+        try{
+            //the decoder maps the file, a remote original is fetched to the temp folder first
+            Optional<Path> local=photoStorage.localPath(AppUtil.PHOTOS_FOLDER_NAME,hash);
+            Path original;
+            if(local.isPresent()){
+                original=local.get();
+            }else{
+                downloaded=Files.createTempFile(photoStorage.tempFolder(),"original-",".part");
+                try(InputStream in=photoStorage.get(AppUtil.PHOTOS_FOLDER_NAME,hash)){
+                    Files.copy(in,downloaded,StandardCopyOption.REPLACE_EXISTING);
+                }
+                original=downloaded;
+            }
+            if(reservation==null){
+                //never scaled up past the original, a small photo's big renditions are the photo at its own size
+                ImageHeader header=AppUtil.readImageHeader(original);
+                width=Math.min(width,Math.max(header.getWidth(),header.getHeight()));
+                reservation=imageMemoryBudget.reserve(header,decodeBytes(header,width));
+            }
+            BufferedImage thumbImg;
+            decodePermits.acquireUninterruptibly();
+            try{
+                if(engine==ThumbnailEngine.SUBSAMPLED){
+                    thumbImg=AppUtil.getSubsampledThumbnail(original,width);
+                }else{
+                    thumbImg=AppUtil.getThumbnail(original,width);
+                }
+            }finally {
+                decodePermits.release();
+                reservation.close();
+            }
+            rendition=Files.createTempFile(photoStorage.tempFolder(),"thumbnail-",".part");
+            if(!ImageIO.write(thumbImg,format,rendition.toFile())){
+                throw new IOException("No image writer for "+format);
+            }
+            photoStorage.put(folder,hash,rendition);
+        }finally {
+            deleteQuietly(downloaded);
+            deleteQuietly(rendition);
+        }
+    }
+
+    private void deleteQuietly(Path temp){
+        if(temp==null){
+            return;
+        }
+        try{
+            Files.deleteIfExists(temp);
+        }catch (IOException e){
+            log.debug(AlbumError.THUMBNAIL_GENERATION_ERROR.toString()+": "+e.getMessage());
+        }
+    }
+
+    //blob first: a photo inserted after this reads the new status from the blob, one inserted before is updated here
+    private void updateStatus(String hash,ThumbnailStatus status){
+        blobRepository.updateThumbnailStatus(hash,status);
+        photoRepository.updateThumbnailStatusByBlobHash(hash,status);
+    }
+}
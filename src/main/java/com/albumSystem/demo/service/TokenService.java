@@ -14,11 +14,14 @@ import java.util.stream.Collectors;
 
 @Service
 public class TokenService {
+    //lets the resource server side resolve the caller by primary key; authorities travel in "scope"
+    public static final String ACCOUNT_ID_CLAIM="account_id";
+
     private final JwtEncoder encoder;
     public  TokenService(JwtEncoder encoder){
         this.encoder=encoder;
     }
-    public  String generateToken(Authentication authentication){
+    public  String generateToken(Authentication authentication,long account_id){
         Instant now=Instant.now();
         String scope=authentication.getAuthorities().stream()
                 .map(GrantedAuthority::getAuthority)
@@ -29,6 +32,7 @@ public class TokenService {
                 .expiresAt(now.plus(100, ChronoUnit.HOURS))// expire time
                 .subject(authentication.getName())
                 .claim("scope",scope)
+                .claim(ACCOUNT_ID_CLAIM,account_id)
                 .build();
         return this.encoder.encode(JwtEncoderParameters.from(claims)).getTokenValue();
     }
@@ -0,0 +1,349 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.model.Album;
+import com.albumSystem.demo.model.UploadSession;
+import com.albumSystem.demo.payload.album.PhotoViewDTO;
+import com.albumSystem.demo.payload.album.UploadSessionPayloadDTO;
+import com.albumSystem.demo.payload.album.UploadSessionViewDTO;
+import com.albumSystem.demo.repository.UploadSessionRepository;
+import com.albumSystem.demo.storage.PhotoStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+//resumable uploads: a session reserves a file in the storage's temp folder, chunks are written into it at their own
+//offsets with positional FileChannel writes (in any order, repeated chunks are harmless) and the received ranges are
+//recorded on the row. The contiguous prefix is hashed as it fills up, so the commit only hashes what is left and hands
+//the file to the PhotoUploadService like any upload
+@Service
+@Slf4j
+public class UploadSessionService {
+
+    //dot-named, so the reconciler's temp purge leaves sessions that are paused longer than its grace period alone
+    static final String SESSIONS_FOLDER_NAME=".sessions";
+
+    private static final Pattern CONTENT_RANGE=Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+    //keeps the recorded ranges within their column; clients sending far out of order have to fill gaps first
+    private static final int MAX_RANGES=100;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private PhotoUploadService photoUploadService;
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Value("${album.upload.session.max-size-mb:512}")
+    private long maxSizeMb;
+
+    @Value("${album.upload.session.max-chunk-mb:16}")
+    private long maxChunkMb;
+
+    //counted from the last chunk
+    @Value("${album.upload.session.ttl-hours:24}")
+    private long ttlHours;
+
+    //one per session touched since startup; a session resumed after a restart is hashed from its first byte again
+    private final ConcurrentHashMap<String,SessionState> states=new ConcurrentHashMap<>();
+
+    //chunk writes of a session share its lock and its commit takes it exclusively, so the file cannot change while it is
+    //committed and sessions never wait for each other. The monitor orders the positional writes, the range bookkeeping
+    //and the running hash of the contiguous prefix; bytes already hashed are never written again
+    private static final class SessionState {
+        private final ReentrantReadWriteLock lock=new ReentrantReadWriteLock();
+        private final MessageDigest sha256=BlobService.sha256();
+        private final CRC32 crc32=new CRC32();
+        private long hashed;
+
+        synchronized void write(FileChannel channel,byte[] buffer,int length,long position)throws IOException{
+            int skip=(int) Math.max(0,Math.min(length,hashed-position));
+            ByteBuffer chunk=ByteBuffer.wrap(buffer,skip,length-skip);
+            long offset=position+skip;
+            while(chunk.hasRemaining()){
+                offset+=channel.write(chunk,offset);
+            }
+        }
+
+        //end must already be received
+        synchronized void hashUpTo(Path file,long end)throws IOException{
+            if(end<=hashed){
+                return;
+            }
+            try(FileChannel channel=FileChannel.open(file,StandardOpenOption.READ)){
+                byte[] buffer=new byte[64*1024];
+                while(hashed<end){
+                    ByteBuffer read=ByteBuffer.wrap(buffer,0,(int) Math.min(buffer.length,end-hashed));
+                    int n=channel.read(read,hashed);
+                    if(n<0){
+                        throw new IOException("Session file ended after "+hashed+" bytes");
+                    }
+                    sha256.update(buffer,0,n);
+                    crc32.update(buffer,0,n);
+                    hashed+=n;
+                }
+            }
+        }
+
+        //the running digest is copied, a commit refused for a full decode budget can be retried
+        synchronized String hash(){
+            try{
+                return HexFormat.of().formatHex(((MessageDigest) sha256.clone()).digest());
+            }catch (CloneNotSupportedException e){
+                throw new IllegalStateException(e);
+            }
+        }
+
+        synchronized long crc32(){
+            return crc32.getValue();
+        }
+    }
+
+    private SessionState stateFor(String session_id){
+        return states.computeIfAbsent(session_id,id -> new SessionState());
+    }
+
+    public UploadSession create(Album album,UploadSessionPayloadDTO payload)throws IOException{
+        //checked here, the payload annotations are not enforced
+        if(payload.getFileName()==null || payload.getFileName().isBlank()){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,"fileName is required");
+        }
+        if(payload.getSize()<=0){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,"size must be positive");
+        }
+        if(!photoUploadService.isSupported(payload.getContentType())){
+            throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,"Only png and jpeg photos are accepted");
+        }
+        if(payload.getSize()>maxSizeMb*1024*1024){
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,"Photos are limited to "+maxSizeMb+"MB");
+        }
+        UploadSession session=new UploadSession(UUID.randomUUID().toString(),album,payload.getFileName(),
+                payload.getContentType(),payload.getSize(),"",0,LocalDateTime.now());
+        Files.createFile(sessionFile(session.getId()));
+        return uploadSessionRepository.save(session);
+    }
+
+    //empty when the session does not exist, has expired or belongs to another account
+    public Optional<UploadSession> findOwnedSession(String session_id,long album_id,long account_id){
+        return uploadSessionRepository.findByIdAndAlbum_IdAndAlbum_Account_Id(session_id,album_id,account_id);
+    }
+
+    //writes one chunk at the offset of its Content-Range ("bytes start-end/total") straight into the session file.
+    //Whatever arrived before a broken connection is still recorded, so the client only resends the missing part
+    public UploadSession writeChunk(UploadSession session,String contentRange,InputStream body)throws IOException{
+        Matcher matcher=contentRange==null ? null : CONTENT_RANGE.matcher(contentRange.trim());
+        if(matcher==null || !matcher.matches()){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,"Content-Range: bytes start-end/total is required");
+        }
+        long start=Long.parseLong(matcher.group(1));
+        long end=Long.parseLong(matcher.group(2));
+        if(start>end || end>=session.getSize()
+                || (!matcher.group(3).equals("*") && Long.parseLong(matcher.group(3))!=session.getSize())){
+            throw new ResponseStatusException(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE,"Chunk is outside the declared size");
+        }
+        long length=end-start+1;
+        if(length>maxChunkMb*1024*1024){
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,"Chunks are limited to "+maxChunkMb+"MB");
+        }
+
+        SessionState state=stateFor(session.getId());
+        long written=0;
+        state.lock.readLock().lock();
+        try{
+            try(FileChannel channel=FileChannel.open(sessionFile(session.getId()),StandardOpenOption.WRITE)){
+                byte[] buffer=new byte[64*1024];
+                while(written<length){
+                    int read=body.read(buffer,0,(int) Math.min(buffer.length,length-written));
+                    if(read<0){
+                        break;
+                    }
+                    state.write(channel,buffer,read,start+written);
+                    written+=read;
+                }
+            }catch (NoSuchFileException e){
+                //committed, deleted, or expired and swept while the client was away
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND,"Upload session expired");
+            }finally {
+                if(written>0){
+                    session=record(state,session.getId(),start,start+written-1);
+                }
+            }
+        }finally {
+            state.lock.readLock().unlock();
+        }
+        if(written<length){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,"Chunk ended after "+written+" of "+length+" bytes");
+        }
+        return session;
+    }
+
+    //records the range, then hashes whatever it added to the contiguous prefix while those bytes are still cached
+    private UploadSession record(SessionState state,String session_id,long start,long end)throws IOException{
+        UploadSession saved;
+        long prefix;
+        synchronized (state){
+            UploadSession session=uploadSessionRepository.findById(session_id)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,"Upload session expired"));
+            List<long[]> ranges=parseRanges(session.getReceivedRanges());
+            ranges=addRange(ranges,start,end);
+            if(ranges.size()>MAX_RANGES){
+                throw new ResponseStatusException(HttpStatus.CONFLICT,"Too many gaps, send the missing ranges first");
+            }
+            long received=0;
+            for(long[] range:ranges){
+                received+=range[1]-range[0]+1;
+            }
+            session.setReceivedRanges(formatRanges(ranges));
+            session.setReceivedBytes(received);
+            session.setUpdatedAt(LocalDateTime.now());
+            saved=uploadSessionRepository.save(session);
+            prefix=ranges.get(0)[0]==0 ? ranges.get(0)[1]+1 : 0;
+        }
+        state.hashUpTo(sessionFile(session_id),prefix);
+        return saved;
+    }
+
+    //creates the photo once every byte is there and ends the session; null when the file is not a usable image,
+    //the session is then kept until the client deletes it or it expires. A 409 lists what is still missing.
+    //a second commit of the same session waits here and then finds it gone
+    public PhotoViewDTO commit(UploadSession session)throws IOException{
+        SessionState state=stateFor(session.getId());
+        state.lock.writeLock().lock();
+        try{
+            UploadSession current=uploadSessionRepository.findById(session.getId())
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,"Upload session expired"));
+            if(current.getReceivedBytes()<current.getSize()){
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Upload incomplete, received "+current.getReceivedRanges()+" of "+current.getSize()+" bytes");
+            }
+            Path file=sessionFile(current.getId());
+            //usually nothing is left: the prefix was hashed as the chunks came in
+            state.hashUpTo(file,current.getSize());
+            //a link to the session file is consumed by the upload, so a commit refused for a full decode budget can be retried
+            BlobService.ReceivedFile received=blobService.receiveHashed(file,state.hash(),current.getSize(),state.crc32());
+            PhotoViewDTO photo=photoUploadService.upload(session.getAlbum(),received,
+                    current.getOriginalFileName(),current.getContentType());
+            if(photo!=null){
+                delete(current);
+            }
+            return photo;
+        }finally {
+            state.lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(UploadSession session)throws IOException{
+        uploadSessionRepository.deleteById(session.getId());
+        Files.deleteIfExists(sessionFile(session.getId()));
+        states.remove(session.getId());
+    }
+
+    public UploadSessionViewDTO toView(UploadSession session){
+        List<String> received=new ArrayList<>();
+        for(long[] range:parseRanges(session.getReceivedRanges())){
+            received.add(range[0]+"-"+range[1]);
+        }
+        return new UploadSessionViewDTO(session.getId(),session.getOriginalFileName(),session.getSize(),
+                session.getReceivedBytes(),received);
+    }
+
+    //drops sessions nobody has written to for ttl-hours; files of sessions whose album was deleted go the same way
+    @Scheduled(fixedDelayString = "${album.upload.session.sweep-interval-ms:3600000}",initialDelayString = "${album.upload.session.sweep-interval-ms:3600000}")
+    public void expire(){
+        uploadSessionRepository.deleteExpired(LocalDateTime.now().minusHours(ttlHours));
+        states.keySet().removeIf(session_id -> !uploadSessionRepository.existsById(session_id));
+        FileTime cutoff=FileTime.fromMillis(System.currentTimeMillis()-TimeUnit.HOURS.toMillis(ttlHours));
+        try(DirectoryStream<Path> stream=Files.newDirectoryStream(sessionsFolder())){
+            for(Path file:stream){
+                try{
+                    if(Files.getLastModifiedTime(file).compareTo(cutoff)<0){
+                        Files.deleteIfExists(file);
+                    }
+                }catch (NoSuchFileException e){
+                    //committed meanwhile
+                }
+            }
+        }catch (IOException e){
+            log.warn("Expiring upload sessions failed: "+e.getMessage());
+        }
+    }
+
+    private Path sessionsFolder()throws IOException{
+        return Files.createDirectories(photoStorage.tempFolder().resolve(SESSIONS_FOLDER_NAME));
+    }
+
+    private Path sessionFile(String session_id)throws IOException{
+        return sessionsFolder().resolve(session_id);
+    }
+
+    private static List<long[]> parseRanges(String ranges){
+        List<long[]> parsed=new ArrayList<>();
+        if(ranges==null || ranges.isEmpty()){
+            return parsed;
+        }
+        for(String range:ranges.split(",")){
+            int dash=range.indexOf('-');
+            parsed.add(new long[]{Long.parseLong(range.substring(0,dash)),Long.parseLong(range.substring(dash+1))});
+        }
+        return parsed;
+    }
+
+    //inserts [start,end] into the sorted list, merging every range it overlaps or touches
+    private static List<long[]> addRange(List<long[]> ranges,long start,long end){
+        List<long[]> merged=new ArrayList<>(ranges.size()+1);
+        for(long[] range:ranges){
+            if(range[1]+1<start || range[0]>end+1){
+                merged.add(range);
+            }else{
+                start=Math.min(start,range[0]);
+                end=Math.max(end,range[1]);
+            }
+        }
+        merged.add(new long[]{start,end});
+        merged.sort((a,b) -> Long.compare(a[0],b[0]));
+        return merged;
+    }
+
+    private static String formatRanges(List<long[]> ranges){
+        StringBuilder builder=new StringBuilder();
+        for(long[] range:ranges){
+            if(builder.length()>0){
+                builder.append(',');
+            }
+            builder.append(range[0]).append('-').append(range[1]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,183 @@
+package com.albumSystem.demo.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//files under a configurable root: {root}/{folder}/ab/cd/abcd... with shard-depth levels of two hex characters,
+//so no directory grows past a few thousand entries however many photos are stored
+@Service
+@ConditionalOnProperty(name = "album.storage.type", havingValue = "local", matchIfMissing = true)
+public class LocalPhotoStorage implements PhotoStorage {
+
+    static final String TMP_FOLDER_NAME="tmp";
+
+    @Value("${album.storage.local.root:src/main/resources/static/uploads/}")
+    private String rootLocation;
+
+    @Value("${album.storage.local.shard-depth:2}")
+    private int shardDepth;
+
+    //shard folders this instance has already created or seen; they are never removed, so each costs one
+    //createDirectories per run instead of one per file. Bounded by folders x 256^shard-depth
+    private final Set<Path> knownDirectories=ConcurrentHashMap.newKeySet();
+
+    Path root(){
+        return Paths.get(rootLocation).toAbsolutePath();
+    }
+
+    Path resolve(String folder,String hash){
+        Path path=root().resolve(folder);
+        for(int level=0;level<shardDepth;level++){
+            path=path.resolve(hash.substring(level*2,level*2+2));
+        }
+        return path.resolve(hash);
+    }
+
+    @Override
+    public void put(String folder,String hash,Path source)throws IOException{
+        Path target=resolve(folder,hash);
+        ensureDirectory(target.getParent());
+        //the temp folder is under the same root, so this is a rename
+        try{
+            Files.move(source,target,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+        }catch (NoSuchFileException e){
+            //the shard folder was removed behind our back (restore, manual cleanup), create it again once
+            knownDirectories.remove(target.getParent());
+            ensureDirectory(target.getParent());
+            Files.move(source,target,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void ensureDirectory(Path directory)throws IOException{
+        if(!knownDirectories.contains(directory)){
+            Files.createDirectories(directory);
+            knownDirectories.add(directory);
+        }
+    }
+
+    @Override
+    public boolean exists(String folder,String hash){
+        return Files.exists(resolve(folder,hash));
+    }
+
+    @Override
+    public StoredObject stat(String folder,String hash)throws IOException{
+        Path file=resolve(folder,hash);
+        BasicFileAttributes attributes=Files.readAttributes(file,BasicFileAttributes.class);
+        return new StoredObject(folder,hash,attributes.size(),attributes.lastModifiedTime().toMillis(),file);
+    }
+
+    @Override
+    public InputStream get(String folder,String hash)throws IOException{
+        return Files.newInputStream(resolve(folder,hash));
+    }
+
+    @Override
+    public InputStream getRange(String folder,String hash,long start,long length)throws IOException{
+        FileChannel channel=FileChannel.open(resolve(folder,hash),StandardOpenOption.READ);
+        channel.position(start);
+        InputStream in=Channels.newInputStream(channel);
+        return new InputStream(){
+            private long remaining=length;
+
+            @Override
+            public int read()throws IOException{
+                if(remaining<=0){
+                    return -1;
+                }
+                int b=in.read();
+                if(b>=0){
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer,int offset,int count)throws IOException{
+                if(remaining<=0){
+                    return -1;
+                }
+                int read=in.read(buffer,offset,(int) Math.min(count,remaining));
+                if(read>0){
+                    remaining-=read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close()throws IOException{
+                in.close();
+            }
+        };
+    }
+
+    @Override
+    public Optional<Path> localPath(String folder,String hash){
+        return Optional.of(resolve(folder,hash));
+    }
+
+    @Override
+    public void delete(String folder,String hash)throws IOException{
+        Files.deleteIfExists(resolve(folder,hash));
+    }
+
+    //the moved file gets a fresh modification time, age in the target folder counts from the move
+    @Override
+    public void move(String folder,String hash,String targetFolder)throws IOException{
+        Path target=resolve(targetFolder,hash);
+        ensureDirectory(target.getParent());
+        Files.move(resolve(folder,hash),target,StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(target,FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    @Override
+    public void list(String folder,String prefix,Visitor visitor)throws IOException{
+        //the shard folders spell out the leading characters, so a prefix narrows the walk to one subtree
+        Path start=root().resolve(folder);
+        int levels=Math.min(shardDepth,prefix.length()/2);
+        for(int level=0;level<levels;level++){
+            start=start.resolve(prefix.substring(level*2,level*2+2));
+        }
+        if(!Files.isDirectory(start)){
+            return;
+        }
+        Files.walkFileTree(start,new SimpleFileVisitor<>(){
+            @Override
+            public FileVisitResult visitFile(Path file,BasicFileAttributes attrs)throws IOException{
+                String hash=file.getFileName().toString();
+                if(attrs.isRegularFile() && hash.startsWith(prefix)){
+                    visitor.visit(hash,attrs.lastModifiedTime().toMillis());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file,IOException exc){
+                //deleted while walking
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir,IOException exc){
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public Path tempFolder()throws IOException{
+        return Files.createDirectories(root().resolve(TMP_FOLDER_NAME));
+    }
+}
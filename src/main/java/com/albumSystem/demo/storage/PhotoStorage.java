@@ -0,0 +1,42 @@
+package com.albumSystem.demo.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+//where originals and thumbnails are kept. Objects are addressed by a folder (photos, thumbnails, ...) and the content
+//hash; implementations decide the physical layout. Reads are streamed, never buffered whole
+public interface PhotoStorage {
+
+    //localPath is set when the object is a file on this machine, so it can be sent with sendfile
+    record StoredObject(String folder,String hash,long size,long lastModified,Path localPath){}
+
+    interface Visitor{
+        void visit(String hash,long lastModified)throws IOException;
+    }
+
+    //takes over the local file: it is moved or uploaded, and gone afterwards
+    void put(String folder,String hash,Path source)throws IOException;
+
+    boolean exists(String folder,String hash)throws IOException;
+
+    //throws NoSuchFileException when there is no such object
+    StoredObject stat(String folder,String hash)throws IOException;
+
+    InputStream get(String folder,String hash)throws IOException;
+
+    InputStream getRange(String folder,String hash,long start,long length)throws IOException;
+
+    Optional<Path> localPath(String folder,String hash);
+
+    void delete(String folder,String hash)throws IOException;
+
+    void move(String folder,String hash,String targetFolder)throws IOException;
+
+    //every object of a folder whose hash starts with the prefix, in no particular order; an empty prefix lists the folder
+    void list(String folder,String prefix,Visitor visitor)throws IOException;
+
+    //local scratch space for uploads being received and images being decoded, whatever the backend
+    Path tempFolder()throws IOException;
+}
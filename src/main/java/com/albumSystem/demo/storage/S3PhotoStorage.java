@@ -0,0 +1,192 @@
+package com.albumSystem.demo.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+//objects in an S3-compatible bucket under {folder}/ab/cd/abcd.... Setting album.storage.s3.endpoint with path-style
+//access points it at a local stand-in such as MinIO. Downloads stream from the object instead of using sendfile
+@Service
+@ConditionalOnProperty(name = "album.storage.type", havingValue = "s3")
+public class S3PhotoStorage implements PhotoStorage {
+
+    @Value("${album.storage.s3.bucket}")
+    private String bucket;
+
+    @Value("${album.storage.s3.region:us-east-1}")
+    private String region;
+
+    @Value("${album.storage.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${album.storage.s3.path-style-access:false}")
+    private boolean pathStyleAccess;
+
+    //empty uses the default AWS credential chain
+    @Value("${album.storage.s3.access-key:}")
+    private String accessKey;
+
+    @Value("${album.storage.s3.secret-key:}")
+    private String secretKey;
+
+    @Value("${album.storage.temp-dir:${java.io.tmpdir}/album-storage}")
+    private String tempDir;
+
+    private S3Client s3;
+
+    @PostConstruct
+    void init(){
+        S3ClientBuilder builder=S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(pathStyleAccess);
+        if(!endpoint.isEmpty()){
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        if(!accessKey.isEmpty()){
+            builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey,secretKey)));
+        }else{
+            builder.credentialsProvider(DefaultCredentialsProvider.create());
+        }
+        s3=builder.build();
+    }
+
+    @PreDestroy
+    void close(){
+        s3.close();
+    }
+
+    static String key(String folder,String hash){
+        return folder+"/"+hash.substring(0,2)+"/"+hash.substring(2,4)+"/"+hash;
+    }
+
+    @Override
+    public void put(String folder,String hash,Path source)throws IOException{
+        try{
+            //streamed from the file with a known length, never read into memory
+            s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key(folder,hash)).build(),RequestBody.fromFile(source));
+        }catch (S3Exception e){
+            throw new IOException(e.getMessage(),e);
+        }
+        Files.deleteIfExists(source);
+    }
+
+    @Override
+    public boolean exists(String folder,String hash)throws IOException{
+        try{
+            stat(folder,hash);
+            return true;
+        }catch (NoSuchFileException e){
+            return false;
+        }
+    }
+
+    @Override
+    public StoredObject stat(String folder,String hash)throws IOException{
+        try{
+            HeadObjectResponse head=s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(key(folder,hash)).build());
+            return new StoredObject(folder,hash,head.contentLength(),head.lastModified().toEpochMilli(),null);
+        }catch (S3Exception e){
+            throw translate(e,folder,hash);
+        }
+    }
+
+    @Override
+    public InputStream get(String folder,String hash)throws IOException{
+        try{
+            return s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key(folder,hash)).build());
+        }catch (S3Exception e){
+            throw translate(e,folder,hash);
+        }
+    }
+
+    @Override
+    public InputStream getRange(String folder,String hash,long start,long length)throws IOException{
+        try{
+            return s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key(folder,hash))
+                    .range("bytes="+start+"-"+(start+length-1)).build());
+        }catch (S3Exception e){
+            throw translate(e,folder,hash);
+        }
+    }
+
+    @Override
+    public Optional<Path> localPath(String folder,String hash){
+        return Optional.empty();
+    }
+
+    @Override
+    public void delete(String folder,String hash)throws IOException{
+        try{
+            s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key(folder,hash)).build());
+        }catch (S3Exception e){
+            throw new IOException(e.getMessage(),e);
+        }
+    }
+
+    //a server-side copy, the new object's LastModified is the time of the move
+    @Override
+    public void move(String folder,String hash,String targetFolder)throws IOException{
+        try{
+            s3.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket).sourceKey(key(folder,hash))
+                    .destinationBucket(bucket).destinationKey(key(targetFolder,hash))
+                    .build());
+        }catch (S3Exception e){
+            throw translate(e,folder,hash);
+        }
+        delete(folder,hash);
+    }
+
+    @Override
+    public void list(String folder,String prefix,Visitor visitor)throws IOException{
+        StringBuilder keyPrefix=new StringBuilder(folder).append('/');
+        if(prefix.length()>=2){
+            keyPrefix.append(prefix,0,2).append('/');
+            if(prefix.length()>=4){
+                keyPrefix.append(prefix,2,4).append('/');
+            }
+        }
+        try{
+            for(S3Object object:s3.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                    .bucket(bucket).prefix(keyPrefix.toString()).build()).contents()){
+                String hash=object.key().substring(object.key().lastIndexOf('/')+1);
+                if(hash.startsWith(prefix)){
+                    visitor.visit(hash,object.lastModified().toEpochMilli());
+                }
+            }
+        }catch (S3Exception e){
+            throw new IOException(e.getMessage(),e);
+        }
+    }
+
+    @Override
+    public Path tempFolder()throws IOException{
+        return Files.createDirectories(Paths.get(tempDir));
+    }
+
+    private IOException translate(S3Exception e,String folder,String hash){
+        if(e.statusCode()==404){
+            return new NoSuchFileException(key(folder,hash));
+        }
+        return new IOException(e.getMessage(),e);
+    }
+}
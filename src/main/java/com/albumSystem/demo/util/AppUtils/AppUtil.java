@@ -2,65 +2,133 @@ package com.albumSystem.demo.util.AppUtils;
 
 
 import org.imgscalr.Scalr;
-import org.springframework.core.io.UrlResource;
-import org.springframework.core.io.Resource;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.util.DigestUtils;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
+import java.awt.image.SampleModel;
 import java.io.IOException;
 import java.nio.Buffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.Iterator;
 
 public class AppUtil {
-    public static String PATH = "src/main/resources/static/uploads/";
-    public static String get_photo_upload_path(String fileName,String folder_name,long album_id)throws IOException{
-        String path=PATH+album_id+"/"+folder_name;
-
-        Files.createDirectories(Paths.get(path));
-        System.out.println(Paths.get(path)+"/"+fileName);
-        System.out.println(Files.createDirectories(Paths.get(path)));
-        return new File(path).getAbsolutePath()+"/"+fileName;
+    public static final String PHOTOS_FOLDER_NAME="photos";
+    public static final String THUMBNAIL_FOLDER_NAME="thumbnails";
+    public static final int THUMBNAIL_WIDTH=300;
+    public static final int DEFAULT_PAGE_SIZE=50;
+    public static final int MAX_PAGE_SIZE=200;
+
+    public static int getPageSize(Integer size){
+        if(size==null || size<=0){
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(size,MAX_PAGE_SIZE);
     }
 
-    public static boolean delete_photo_from_path(String fileName, String folder_name, long album_id) {
-        try {
-            File f = new File(PATH + album_id + "\\" + folder_name + "\\"+fileName); // file to be delete
-            if (f.delete())
-            {
-                return true;
-            } else {
-                return false;
+    //image headers sit at the start of the file; only this much is mapped to read them
+    public static final int HEADER_PROBE_BYTES=64*1024;
+
+    //reads only the header of a stored image, no pixels are allocated. The first HEADER_PROBE_BYTES are enough for
+    //almost every file; one with a bigger preamble (large EXIF or ICC blocks) is read again without a limit
+    public static ImageHeader readImageHeader(Path file)throws IOException{
+        try(ImageInputStream in=new MappedImageInputStream(file,HEADER_PROBE_BYTES)){
+            return readImageHeader(file,in);
+        }catch (IOException e){
+            if(Files.size(file)<=HEADER_PROBE_BYTES){
+                throw e;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
         }
+        try(ImageInputStream in=new FileImageInputStream(file.toFile())){
+            return readImageHeader(file,in);
+        }
+    }
 
+    private static ImageHeader readImageHeader(Path file,ImageInputStream in)throws IOException{
+        Iterator<ImageReader> readers=ImageIO.getImageReaders(in);
+        if(!readers.hasNext()){
+            throw new IOException("Unsupported image format: "+file.getFileName());
+        }
+        ImageReader reader=readers.next();
+        try{
+            reader.setInput(in,true,true);
+            int bytesPerPixel=4;
+            ImageTypeSpecifier type=reader.getRawImageType(0);
+            if(type!=null){
+                SampleModel sampleModel=type.getSampleModel();
+                int bits=0;
+                for(int band=0;band<sampleModel.getNumBands();band++){
+                    bits+=sampleModel.getSampleSize(band);
+                }
+                bytesPerPixel=Math.max(1,(bits+7)/8);
+            }
+            return new ImageHeader(reader.getWidth(0),reader.getHeight(0),bytesPerPixel);
+        }finally {
+            reader.dispose();
+        }
     }
-    public static BufferedImage getThumbnail(MultipartFile originalFile, Integer width)throws IOException{
+
+    //decodes the stored original, the multipart upload itself is never read a second time
+    public static BufferedImage getThumbnail(Path originalFile, Integer width)throws IOException{
         BufferedImage thumbImg=null;
-        BufferedImage img= ImageIO.read(originalFile.getInputStream());
+        BufferedImage img;
+        try(ImageInputStream in=MappedImageInputStream.open(originalFile)){
+            img= ImageIO.read(in);
+        }
+        if(img==null){
+            throw new IOException("Unsupported image format: "+originalFile.getFileName());
+        }
         thumbImg= Scalr.resize(img,Scalr.Method.AUTOMATIC,Scalr.Mode.AUTOMATIC,width,Scalr.OP_ANTIALIAS);
         return thumbImg;
 
     }
 
-    public static Resource getFileAsResource(long album_id,String folder_name,String file_name)throws IOException{
-        String location=PATH+album_id+"/"+folder_name+"/"+file_name;
-        File file=new File(location);
-        if(file.exists()){
-            Path path=Paths.get(file.getAbsolutePath());
-            return new UrlResource(path.toUri());
+    //Mode.AUTOMATIC fits the longest side to the target, so decode that side at roughly twice the target size
+    public static int thumbnailSubsampling(int imageWidth,int imageHeight,int width){
+        return Math.max(1,Math.max(imageWidth,imageHeight)/(2*width));
+    }
 
-        }else{
-            return null;
+    //decodes only every n-th pixel of the stored original, then does the final high quality resize on the small image
+    public static BufferedImage getSubsampledThumbnail(Path originalFile, Integer width)throws IOException{
+        BufferedImage img;
+        try(ImageInputStream in=MappedImageInputStream.open(originalFile)){
+            Iterator<ImageReader> readers=ImageIO.getImageReaders(in);
+            if(!readers.hasNext()){
+                throw new IOException("Unsupported image format: "+originalFile.getFileName());
+            }
+            ImageReader reader=readers.next();
+            try{
+                reader.setInput(in,true,true);
+                int subsampling=thumbnailSubsampling(reader.getWidth(0),reader.getHeight(0),width);
+                ImageReadParam param=reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling,subsampling,0,0);
+                img=reader.read(0,param);
+            }finally {
+                reader.dispose();
+            }
         }
+        return Scalr.resize(img,Scalr.Method.QUALITY,Scalr.Mode.AUTOMATIC,width,Scalr.OP_ANTIALIAS);
     }
 
+    //a stored file is named by the SHA-256 of its content, so the name identifies the bytes and makes a strong validator.
+    //photos not moved out of the old layout yet keep their random-prefixed names, which are never reused either
+    public static String getFileETag(String folder_name,String file_name){
+        return "\""+DigestUtils.md5DigestAsHex((folder_name+"/"+file_name).getBytes(StandardCharsets.UTF_8))+"\"";
+    }
+
+    //thumbnails of the other allowed sizes are stored next to the default one, e.g. thumbnails-600
+    public static String getRenditionFolder(int width){
+        return width==THUMBNAIL_WIDTH ? THUMBNAIL_FOLDER_NAME : THUMBNAIL_FOLDER_NAME+"-"+width;
+    }
+
+
 
 }
@@ -0,0 +1,30 @@
+package com.albumSystem.demo.util.AppUtils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class ImageHeader {
+    private int width;
+    private int height;
+    private int bytesPerPixel;
+
+    public long pixels(){
+        return (long) width*height;
+    }
+
+    //heap needed to decode the full image: the decoded raster plus the 4 byte/pixel copy imgscalr makes before resizing
+    public long decodedBytes(){
+        return decodedBytes(1);
+    }
+
+    //same estimate when the reader only decodes every n-th row and column
+    public long decodedBytes(int subsampling){
+        long decodedWidth=(width+subsampling-1)/subsampling;
+        long decodedHeight=(height+subsampling-1)/subsampling;
+        return decodedWidth*decodedHeight*(bytesPerPixel+4);
+    }
+}
@@ -0,0 +1,114 @@
+package com.albumSystem.demo.util.AppUtils;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//ImageInputStream over a read-only memory map of a stored file.
+//ImageIO's InputStream based readers copy everything into a cache first, this one reads the page cache directly.
+//The mapping is released on close, so the file can be moved or deleted right after and mappings do not pile up
+//in the address space until the buffer happens to be collected
+public class MappedImageInputStream extends ImageInputStreamImpl {
+
+    //sun.misc.Unsafe.invokeCleaner, null when the JDK does not expose it; the mapping is then left to the collector
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static{
+        Object unsafe=null;
+        Method invokeCleaner=null;
+        try{
+            Class<?> unsafeClass=Class.forName("sun.misc.Unsafe");
+            Field field=unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe=field.get(null);
+            invokeCleaner=unsafeClass.getMethod("invokeCleaner",ByteBuffer.class);
+        }catch (ReflectiveOperationException|RuntimeException e){
+            unsafe=null;
+            invokeCleaner=null;
+        }
+        UNSAFE=unsafe;
+        INVOKE_CLEANER=invokeCleaner;
+    }
+
+    private final MappedByteBuffer buffer;
+
+    public MappedImageInputStream(Path path)throws IOException{
+        this(path,Long.MAX_VALUE);
+    }
+
+    //maps only the first maxLength bytes; reads past them see the end of the stream
+    public MappedImageInputStream(Path path,long maxLength)throws IOException{
+        try(FileChannel channel=FileChannel.open(path, StandardOpenOption.READ)){
+            long size=Math.min(channel.size(),maxLength);
+            if(size>Integer.MAX_VALUE){
+                throw new IOException("Too large to map: "+path.getFileName());
+            }
+            //the mapping stays valid after the channel is closed
+            buffer=channel.map(FileChannel.MapMode.READ_ONLY,0,size);
+        }
+    }
+
+    //a single MappedByteBuffer cannot address more than 2 GB, bigger files are read through a RandomAccessFile
+    public static ImageInputStream open(Path path)throws IOException{
+        if(Files.size(path)>Integer.MAX_VALUE){
+            return new FileImageInputStream(path.toFile());
+        }
+        return new MappedImageInputStream(path);
+    }
+
+    @Override
+    public int read()throws IOException{
+        checkClosed();
+        bitOffset=0;
+        if(streamPos>=buffer.limit()){
+            return -1;
+        }
+        return buffer.get((int) streamPos++) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b,int off,int len)throws IOException{
+        checkClosed();
+        bitOffset=0;
+        if(len==0){
+            return 0;
+        }
+        long remaining=buffer.limit()-streamPos;
+        if(remaining<=0){
+            return -1;
+        }
+        int n=(int) Math.min(len,remaining);
+        buffer.get((int) streamPos,b,off,n);
+        streamPos+=n;
+        return n;
+    }
+
+    @Override
+    public long length(){
+        return buffer.limit();
+    }
+
+    //checkClosed() keeps every read away from the buffer once it is unmapped
+    @Override
+    public void close()throws IOException{
+        super.close();
+        if(INVOKE_CLEANER==null){
+            return;
+        }
+        try{
+            INVOKE_CLEANER.invoke(UNSAFE,buffer);
+        }catch (ReflectiveOperationException e){
+            //released when the buffer is collected
+        }
+    }
+}
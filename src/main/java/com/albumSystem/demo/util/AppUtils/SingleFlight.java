@@ -0,0 +1,99 @@
+package com.albumSystem.demo.util.AppUtils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+//runs at most one computation per key at a time: callers that arrive while it is in flight wait for its outcome
+//instead of starting their own, and all of them see the same value or the same exception. Nothing is kept once it
+//completes, the next call computes again. Counted as singleflight.executions / .coalesced / .failures tagged name=...
+public class SingleFlight<K,V> {
+
+    public interface Loader<V> {
+        V load()throws IOException;
+    }
+
+    private final ConcurrentHashMap<K,CompletableFuture<V>> inFlight=new ConcurrentHashMap<>();
+    private final LongAdder executions=new LongAdder();
+    private final LongAdder coalesced=new LongAdder();
+    private final LongAdder failures=new LongAdder();
+
+    public SingleFlight(){
+    }
+
+    public SingleFlight(String name,MeterRegistry meterRegistry){
+        FunctionCounter.builder("singleflight.executions",executions,LongAdder::sum)
+                .description("Computations actually run")
+                .tag("name",name)
+                .register(meterRegistry);
+        FunctionCounter.builder("singleflight.coalesced",coalesced,LongAdder::sum)
+                .description("Calls that waited for a computation already in flight")
+                .tag("name",name)
+                .register(meterRegistry);
+        FunctionCounter.builder("singleflight.failures",failures,LongAdder::sum)
+                .description("Computations that threw, each releases all of its waiters")
+                .tag("name",name)
+                .register(meterRegistry);
+    }
+
+    public V execute(K key,Loader<V> loader)throws IOException{
+        CompletableFuture<V> call=new CompletableFuture<>();
+        CompletableFuture<V> running=inFlight.putIfAbsent(key,call);
+        if(running!=null){
+            coalesced.increment();
+            return await(key,running);
+        }
+        executions.increment();
+        try{
+            V value=loader.load();
+            call.complete(value);
+            return value;
+        }catch (Throwable e){
+            failures.increment();
+            call.completeExceptionally(e);
+            throw e;
+        }finally {
+            //removed only after completing, so a caller arriving in between still gets this outcome
+            inFlight.remove(key,call);
+        }
+    }
+
+    private V await(K key,CompletableFuture<V> running)throws IOException{
+        try{
+            return running.get();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for "+key);
+        }catch (ExecutionException e){
+            Throwable cause=e.getCause();
+            if(cause instanceof IOException ioException){
+                throw ioException;
+            }
+            if(cause instanceof RuntimeException runtimeException){
+                throw runtimeException;
+            }
+            if(cause instanceof Error error){
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    public long executions(){
+        return executions.sum();
+    }
+
+    public long coalesced(){
+        return coalesced.sum();
+    }
+
+    public long failures(){
+        return failures.sum();
+    }
+}
@@ -2,5 +2,5 @@ package com.albumSystem.demo.util.constants;
 
 public enum AlbumError {
 
-    ADD_ALBUM_ERROR,PHOTO_UPLOAD_ERROR;
+    ADD_ALBUM_ERROR,PHOTO_UPLOAD_ERROR,THUMBNAIL_GENERATION_ERROR;
 }
@@ -0,0 +1,6 @@
+package com.albumSystem.demo.util.constants;
+
+public enum ThumbnailEngine {
+    SCALR,// full decode, then imgscalr resize
+    SUBSAMPLED// ImageReader source subsampling to about 2x the target, then a quality resize
+}
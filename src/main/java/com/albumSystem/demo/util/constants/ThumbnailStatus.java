@@ -0,0 +1,7 @@
+package com.albumSystem.demo.util.constants;
+
+public enum ThumbnailStatus {
+    PENDING,// queued for the thumbnail worker
+    READY,
+    FAILED
+}
@@ -0,0 +1,88 @@
+package com.albumSystem.demo.controller;
+
+import com.albumSystem.demo.model.Account;
+import com.albumSystem.demo.model.Album;
+import com.albumSystem.demo.model.Photo;
+import com.albumSystem.demo.service.AccountService;
+import com.albumSystem.demo.service.AlbumService;
+import com.albumSystem.demo.service.PhotoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class AlbumControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private AlbumService albumService;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Test
+    void albumDeleteIsReachableWithAToken() throws Exception {
+        Album album = album();
+
+        mockMvc.perform(delete("/api/v1/albums/{album_id}/delete", album.getId()))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(delete("/api/v1/albums/{album_id}/delete", album.getId())
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token()))
+                .andExpect(status().isAccepted());
+
+        assertTrue(albumService.findById(album.getId()).isEmpty());
+    }
+
+    @Test
+    void photoDeleteIsReachableWithAToken() throws Exception {
+        Album album = album();
+        Photo photo = new Photo();
+        photo.setName("photo");
+        photo.setFileName("controller.jpg");
+        photo.setAlbum(album);
+        photo = photoService.save(photo);
+
+        mockMvc.perform(delete("/api/v1/albums/{album_id}/photos/{photo_id}/delete", album.getId(), photo.getId())
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token()))
+                .andExpect(status().isAccepted());
+
+        assertTrue(photoService.findById(photo.getId()).isEmpty());
+    }
+
+    private String token() throws Exception {
+        String body = mockMvc.perform(post("/api/v1/auth/token")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"user@user.com\",\"password\":\"pass987\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+
+    private Album album() {
+        Account account = accountService.findByEmail("user@user.com").get();
+        Album album = new Album();
+        album.setName("controller");
+        album.setDescription("description");
+        album.setAccount(account);
+        return albumService.save(album);
+    }
+}
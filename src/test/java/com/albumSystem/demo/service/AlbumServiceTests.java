@@ -0,0 +1,98 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.model.Account;
+import com.albumSystem.demo.model.Album;
+import com.albumSystem.demo.model.Photo;
+import com.albumSystem.demo.payload.album.AlbumViewDTO;
+import com.albumSystem.demo.payload.album.CursorPageDTO;
+import com.albumSystem.demo.payload.album.PhotoDTO;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class AlbumServiceTests {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private AlbumService albumService;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void albumListingUsesTwoStatementsRegardlessOfAlbumCount() {
+        Account account = accountService.findByEmail("user@user.com").get();
+        List<Long> albumIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Album album = new Album();
+            album.setName("album" + i);
+            album.setDescription("description");
+            album.setAccount(account);
+            album = albumService.save(album);
+            albumIds.add(album.getId());
+            for (int j = 0; j < 3; j++) {
+                Photo photo = new Photo();
+                photo.setName("photo" + j);
+                photo.setFileName("file" + i + "_" + j + ".jpg");
+                photo.setAlbum(album);
+                photoService.save(photo);
+            }
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<AlbumViewDTO> albums = albumService.findViewsByAccountId(account.getId(), 0, 200).getItems();
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+        for (AlbumViewDTO album : albums) {
+            if (albumIds.contains(album.getId())) {
+                assertEquals(3, album.getPhotos().size());
+            }
+        }
+        assertEquals(albumIds.size(), albums.stream().filter(album -> albumIds.contains(album.getId())).count());
+    }
+
+    @Test
+    void albumPhotosArePagedWithCursor() {
+        Account account = accountService.findByEmail("user@user.com").get();
+        Album album = new Album();
+        album.setName("paged");
+        album.setDescription("description");
+        album.setAccount(account);
+        album = albumService.save(album);
+        for (int i = 0; i < 5; i++) {
+            Photo photo = new Photo();
+            photo.setName("photo" + i);
+            photo.setFileName("paged" + i + ".jpg");
+            photo.setAlbum(album);
+            photoService.save(photo);
+        }
+
+        CursorPageDTO<PhotoDTO> first = photoService.findPhotoPage(album.getId(), 0, 3);
+        assertEquals(3, first.getItems().size());
+        assertNotNull(first.getNext());
+
+        CursorPageDTO<PhotoDTO> second = photoService.findPhotoPage(album.getId(), first.getNext(), 3);
+        assertEquals(2, second.getItems().size());
+        assertNull(second.getNext());
+        assertTrue(second.getItems().get(0).getId() > first.getNext());
+    }
+
+}
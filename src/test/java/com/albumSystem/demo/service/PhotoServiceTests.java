@@ -0,0 +1,64 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.model.Account;
+import com.albumSystem.demo.model.Album;
+import com.albumSystem.demo.model.Photo;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class PhotoServiceTests {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private AlbumService albumService;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void bulkSaveBatchesInsertsAndSequenceCalls() {
+        Account account = accountService.findByEmail("user@user.com").get();
+        Album album = new Album();
+        album.setName("bulk");
+        album.setDescription("description");
+        album.setAccount(account);
+        album = albumService.save(album);
+
+        List<Photo> photos = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Photo photo = new Photo();
+            photo.setName("photo" + i);
+            photo.setFileName("bulk" + i + ".jpg");
+            photo.setAlbum(album);
+            photos.add(photo);
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        photoService.saveAll(photos);
+
+        assertEquals(40, statistics.getEntityInsertCount());
+        // at most one nextval per 50 ids plus one batched insert statement, instead of one or two per file
+        assertTrue(statistics.getPrepareStatementCount() <= 3,
+                "statements for 40 photos: " + statistics.getPrepareStatementCount());
+        for (Photo photo : photos) {
+            assertTrue(photo.getId() > 0);
+        }
+    }
+}
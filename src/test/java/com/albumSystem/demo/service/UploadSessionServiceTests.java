@@ -0,0 +1,211 @@
+package com.albumSystem.demo.service;
+
+import com.albumSystem.demo.model.Account;
+import com.albumSystem.demo.model.Album;
+import com.albumSystem.demo.model.UploadSession;
+import com.albumSystem.demo.payload.album.PhotoViewDTO;
+import com.albumSystem.demo.payload.album.UploadSessionPayloadDTO;
+import com.albumSystem.demo.payload.album.UploadSessionViewDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+class UploadSessionServiceTests {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private AlbumService albumService;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private UploadSessionService uploadSessionService;
+
+    @Test
+    void sessionsWithoutContentAreRejected() {
+        Album album = album();
+        ResponseStatusException empty = assertThrows(ResponseStatusException.class,
+                () -> uploadSessionService.create(album, new UploadSessionPayloadDTO("photo.jpg", "image/jpeg", 0)));
+        assertEquals(HttpStatus.BAD_REQUEST, empty.getStatusCode());
+
+        ResponseStatusException negative = assertThrows(ResponseStatusException.class,
+                () -> uploadSessionService.create(album, new UploadSessionPayloadDTO("photo.jpg", "image/jpeg", -1)));
+        assertEquals(HttpStatus.BAD_REQUEST, negative.getStatusCode());
+    }
+
+    @Test
+    void sessionsWithoutFileNameAreRejected() {
+        Album album = album();
+        ResponseStatusException missing = assertThrows(ResponseStatusException.class,
+                () -> uploadSessionService.create(album, new UploadSessionPayloadDTO(null, "image/jpeg", 1024)));
+        assertEquals(HttpStatus.BAD_REQUEST, missing.getStatusCode());
+
+        ResponseStatusException blank = assertThrows(ResponseStatusException.class,
+                () -> uploadSessionService.create(album, new UploadSessionPayloadDTO("  ", "image/jpeg", 1024)));
+        assertEquals(HttpStatus.BAD_REQUEST, blank.getStatusCode());
+    }
+
+    @Test
+    void outOfOrderAndOverlappingChunksAssembleTheFile() throws Exception {
+        Album album = album();
+        byte[] content = png(1);
+        UploadSession session = session(album, content);
+        int third = content.length / 3;
+
+        // last part first, then the middle overlapping both neighbours, then the start
+        send(session, content, 2 * third, content.length - 1);
+        send(session, content, third - 10, 2 * third + 10);
+        UploadSession written = send(session, content, 0, third);
+
+        assertEquals(content.length, written.getReceivedBytes());
+        assertEquals(List.of("0-" + (content.length - 1)), uploadSessionService.toView(written).getReceived());
+        PhotoViewDTO photo = uploadSessionService.commit(session);
+        assertNotNull(photo);
+        // the running hash matches the bytes as a whole
+        assertEquals(sha256(content), photoService.findById(photo.getId()).get().getFileName());
+    }
+
+    @Test
+    void brokenChunkIsResumedFromTheSessionStatus() throws Exception {
+        Album album = album();
+        byte[] content = png(2);
+        UploadSession session = session(album, content);
+        int half = content.length / 2;
+
+        // the connection breaks after half of the body
+        ResponseStatusException broken = assertThrows(ResponseStatusException.class,
+                () -> uploadSessionService.writeChunk(session, "bytes 0-" + (content.length - 1) + "/" + content.length,
+                        new ByteArrayInputStream(Arrays.copyOf(content, half))));
+        assertEquals(HttpStatus.BAD_REQUEST, broken.getStatusCode());
+
+        Account account = accountService.findByEmail("user@user.com").get();
+        UploadSessionViewDTO status = uploadSessionService.toView(
+                uploadSessionService.findOwnedSession(session.getId(), album.getId(), account.getId()).get());
+        assertEquals(half, status.getReceivedBytes());
+        assertEquals(List.of("0-" + (half - 1)), status.getReceived());
+
+        long next = Long.parseLong(status.getReceived().get(0).split("-")[1]) + 1;
+        send(session, content, next, content.length - 1);
+        PhotoViewDTO photo = uploadSessionService.commit(session);
+        assertNotNull(photo);
+        assertEquals(sha256(content), photoService.findById(photo.getId()).get().getFileName());
+    }
+
+    @Test
+    void incompleteCommitIsConflict() throws Exception {
+        Album album = album();
+        byte[] content = png(3);
+        UploadSession session = session(album, content);
+        send(session, content, 0, content.length / 2);
+
+        ResponseStatusException incomplete = assertThrows(ResponseStatusException.class,
+                () -> uploadSessionService.commit(session));
+        assertEquals(HttpStatus.CONFLICT, incomplete.getStatusCode());
+        assertEquals(0, photoService.findByAlbumId(album.getId()).size());
+    }
+
+    @Test
+    void concurrentAndRepeatedCommitsCreateOnePhoto() throws Exception {
+        Album album = album();
+        byte[] content = png(4);
+        UploadSession session = session(album, content);
+        send(session, content, 0, content.length - 1);
+
+        CountDownLatch start = new CountDownLatch(1);
+        Callable<PhotoViewDTO> commit = () -> {
+            start.await();
+            return uploadSessionService.commit(session);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Throwable> failures = new ArrayList<>();
+        int committed = 0;
+        try {
+            List<Future<PhotoViewDTO>> results = List.of(executor.submit(commit), executor.submit(commit));
+            start.countDown();
+            for (Future<PhotoViewDTO> result : results) {
+                try {
+                    assertNotNull(result.get());
+                    committed++;
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, committed);
+        assertEquals(1, failures.size());
+        assertEquals(HttpStatus.NOT_FOUND, assertInstanceOf(ResponseStatusException.class, failures.get(0)).getStatusCode());
+
+        ResponseStatusException repeated = assertThrows(ResponseStatusException.class,
+                () -> uploadSessionService.commit(session));
+        assertEquals(HttpStatus.NOT_FOUND, repeated.getStatusCode());
+        assertEquals(1, photoService.findByAlbumId(album.getId()).size());
+    }
+
+    private UploadSession session(Album album, byte[] content) throws IOException {
+        return uploadSessionService.create(album, new UploadSessionPayloadDTO("photo.png", "image/png", content.length));
+    }
+
+    private UploadSession send(UploadSession session, byte[] content, long start, long end) throws IOException {
+        return uploadSessionService.writeChunk(session, "bytes " + start + "-" + end + "/" + content.length,
+                new ByteArrayInputStream(Arrays.copyOfRange(content, (int) start, (int) end + 1)));
+    }
+
+    // noise, so every test uploads content of its own
+    private byte[] png(long seed) throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    private Album album() {
+        Account account = accountService.findByEmail("user@user.com").get();
+        Album album = new Album();
+        album.setName("sessions");
+        album.setDescription("description");
+        album.setAccount(account);
+        return albumService.save(album);
+    }
+}
@@ -0,0 +1,117 @@
+package com.albumSystem.demo.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//runs S3PhotoStorage against MinIO through the endpoint override, the same way album.storage.s3.endpoint is used
+@Testcontainers(disabledWithoutDocker = true)
+class S3PhotoStorageTests {
+
+    @Container
+    private static final MinIOContainer MINIO = new MinIOContainer("minio/minio:RELEASE.2024-05-10T01-41-38Z");
+
+    private static final String HASH = "abcdef0123456789abcdef0123456789abcdef0123456789abcdef0123456789";
+
+    @TempDir
+    Path tempDir;
+
+    private S3PhotoStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        String bucket = "photos-" + UUID.randomUUID();
+        try (S3Client client = S3Client.builder()
+                .endpointOverride(URI.create(MINIO.getS3URL()))
+                .region(Region.US_EAST_1)
+                .forcePathStyle(true)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(MINIO.getUserName(), MINIO.getPassword())))
+                .build()) {
+            client.createBucket(builder -> builder.bucket(bucket));
+        }
+        storage = new S3PhotoStorage();
+        ReflectionTestUtils.setField(storage, "bucket", bucket);
+        ReflectionTestUtils.setField(storage, "region", "us-east-1");
+        ReflectionTestUtils.setField(storage, "endpoint", MINIO.getS3URL());
+        ReflectionTestUtils.setField(storage, "pathStyleAccess", true);
+        ReflectionTestUtils.setField(storage, "accessKey", MINIO.getUserName());
+        ReflectionTestUtils.setField(storage, "secretKey", MINIO.getPassword());
+        ReflectionTestUtils.setField(storage, "tempDir", tempDir.toString());
+        storage.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void storedObjectIsReadBackWholeAndByRange() throws Exception {
+        byte[] content = "0123456789".getBytes(StandardCharsets.US_ASCII);
+        Path source = Files.write(tempDir.resolve("upload.part"), content);
+
+        storage.put("photos", HASH, source);
+
+        assertFalse(Files.exists(source));
+        assertTrue(storage.exists("photos", HASH));
+        PhotoStorage.StoredObject stored = storage.stat("photos", HASH);
+        assertEquals(content.length, stored.size());
+        assertNull(stored.localPath());
+        try (InputStream in = storage.get("photos", HASH)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        try (InputStream in = storage.getRange("photos", HASH, 2, 3)) {
+            assertArrayEquals("234".getBytes(StandardCharsets.US_ASCII), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void missingObjectsAreNoSuchFile() throws Exception {
+        assertFalse(storage.exists("photos", HASH));
+        assertThrows(NoSuchFileException.class, () -> storage.stat("photos", HASH));
+        assertThrows(NoSuchFileException.class, () -> storage.get("photos", HASH));
+        assertThrows(NoSuchFileException.class, () -> storage.move("photos", HASH, ".quarantine/photos"));
+    }
+
+    @Test
+    void movedObjectsAreListedUnderTheirNewFolderOnly() throws Exception {
+        storage.put("photos", HASH, Files.write(tempDir.resolve("upload.part"), new byte[]{1, 2, 3}));
+
+        storage.move("photos", HASH, ".quarantine/photos");
+
+        assertFalse(storage.exists("photos", HASH));
+        List<String> listed = new ArrayList<>();
+        storage.list(".quarantine/photos", "ab", (hash, lastModified) -> listed.add(hash));
+        assertEquals(List.of(HASH), listed);
+
+        storage.delete(".quarantine/photos", HASH);
+        assertFalse(storage.exists(".quarantine/photos", HASH));
+    }
+}
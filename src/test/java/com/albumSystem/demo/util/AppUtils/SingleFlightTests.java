@@ -0,0 +1,97 @@
+package com.albumSystem.demo.util.AppUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTests {
+
+    @Test
+    void concurrentCallsShareOneComputation() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SingleFlight<String, String> flight = new SingleFlight<>("test", registry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> call(flight, () -> {
+            started.countDown();
+            release.await();
+            return "value";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> call(flight, () -> "second"));
+        while (flight.coalesced() == 0) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("value", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, flight.executions());
+        assertEquals(1, flight.coalesced());
+        assertEquals(1, registry.get("singleflight.coalesced").tag("name", "test").functionCounter().count());
+    }
+
+    @Test
+    void failureReleasesWaitersAndIsNotKept() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IOException broken = new IOException("broken");
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> call(flight, () -> {
+            started.countDown();
+            release.await();
+            throw broken;
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> call(flight, () -> "second"));
+        while (flight.coalesced() == 0) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        // both the caller that ran the computation and the one that joined it see the same exception
+        ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        ExecutionException waiterFailure = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertSame(broken, leaderFailure.getCause().getCause());
+        assertSame(broken, waiterFailure.getCause().getCause());
+        assertEquals(1, flight.executions());
+        assertEquals(1, flight.coalesced());
+        assertEquals(1, flight.failures());
+
+        // the failure is not kept, the next call computes again
+        assertEquals("again", flight.execute("key", () -> "again"));
+        assertEquals(2, flight.executions());
+    }
+
+    private interface Blocking {
+        String load() throws Exception;
+    }
+
+    private static String call(SingleFlight<String, String> flight, Blocking loader) {
+        try {
+            return flight.execute("key", () -> {
+                try {
+                    return loader.load();
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}